@@ -0,0 +1,167 @@
+import java.util.Arrays;
+
+/**
+ * Aho-Corasick search for many patterns at once. The patterns are built into
+ * a trie, and each state of the trie is given a transition on every char, so
+ * that following a mismatch back to the longest suffix that's still in the
+ * trie is already done. Scanning a text is then one table lookup per char, no
+ * matter how many patterns there are.
+ *
+ * The transitions live in one flat int array with a row per state. To keep
+ * the rows short, chars are first mapped to classes: each char that appears in
+ * some pattern gets its own class, and every other char shares class 0, which
+ * always leads back to the root. A dictionary of English words needs a few
+ * dozen classes, so thousands of patterns fit in a few megabytes.
+ */
+public class AhoCorasick {
+	private final String[] patterns;
+
+	// charClass[c] is the column of char c, and next[state * classes + class]
+	// the state after reading it.
+	private final int[] charClass;
+	private final int classes;
+	private final int[] next;
+
+	// output[state] is the pattern that ends at state, or -1, and
+	// outputLink[state] the nearest state along the failure links with an
+	// output, or -1. duplicate[p] is the first pattern with the same text as
+	// pattern p, or -1 if p is the first.
+	private final int[] output;
+	private final int[] outputLink;
+	private final int[] duplicate;
+	private final int states;
+
+	public AhoCorasick(String... patterns) {
+		this.patterns = patterns.clone();
+
+		charClass = new int[Character.MAX_VALUE + 1];
+		int classCount = 1;
+		long total = 1;
+		for (String pattern : patterns) {
+			if (pattern.isEmpty())
+				throw new IllegalArgumentException("patterns can't be empty");
+			for (int i = 0; i < pattern.length(); i++) {
+				if (charClass[pattern.charAt(i)] == 0)
+					charClass[pattern.charAt(i)] = classCount++;
+			}
+			total += pattern.length();
+		}
+		classes = classCount;
+		if (total * classes > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("too many patterns for one automaton");
+
+		// the trie. an entry of 0 is a missing edge, as nothing leads back to
+		// the root until the failure links are filled in.
+		next = new int[(int) total * classes];
+		output = new int[(int) total];
+		Arrays.fill(output, -1);
+		duplicate = new int[patterns.length];
+		int count = 1;
+		for (int p = 0; p < patterns.length; p++) {
+			int state = 0;
+			for (int i = 0; i < patterns[p].length(); i++) {
+				int edge = state * classes + charClass[patterns[p].charAt(i)];
+				if (next[edge] == 0)
+					next[edge] = count++;
+				state = next[edge];
+			}
+			duplicate[p] = output[state];
+			if (output[state] < 0)
+				output[state] = p;
+		}
+		states = count;
+		outputLink = new int[states];
+		outputLink[0] = -1;
+
+		// fill in the rest of each row breadth first, so the row of a
+		// state's failure link is always complete before the state's own.
+		int[] fail = new int[states];
+		int[] queue = new int[states];
+		int head = 0;
+		int tail = 0;
+		for (int c = 0; c < classes; c++) {
+			int child = next[c];
+			if (child != 0) {
+				outputLink[child] = -1;
+				queue[tail++] = child;
+			}
+		}
+		while (head < tail) {
+			int state = queue[head++];
+			int row = state * classes;
+			int failRow = fail[state] * classes;
+			for (int c = 0; c < classes; c++) {
+				int child = next[row + c];
+				if (child == 0) {
+					next[row + c] = next[failRow + c];
+				} else {
+					int f = next[failRow + c];
+					fail[child] = f;
+					outputLink[child] = output[f] >= 0 ? f : outputLink[f];
+					queue[tail++] = child;
+				}
+			}
+		}
+	}
+
+	public int size() {
+		return patterns.length;
+	}
+
+	public String pattern(int index) {
+		return patterns[index];
+	}
+
+	/**
+	 * The number of states in the automaton.
+	 */
+	public int states() {
+		return states;
+	}
+
+	/**
+	 * Returns how many times each pattern occurs in text, indexed the same as
+	 * the patterns passed to the constructor. Overlapping occurrences all
+	 * count.
+	 */
+	public int[] count(CharSequence text) {
+		int[] counts = new int[patterns.length];
+		int state = 0;
+		for (int i = 0; i < text.length(); i++) {
+			state = next[state * classes + charClass[text.charAt(i)]];
+			for (int s = output[state] >= 0 ? state : outputLink[state]; s > 0; s = outputLink[s])
+				counts[output[s]]++;
+		}
+		for (int p = 0; p < patterns.length; p++) {
+			if (duplicate[p] >= 0)
+				counts[p] = counts[duplicate[p]];
+		}
+		return counts;
+	}
+
+	/**
+	 * Returns the start of every occurrence of each pattern in text, in order,
+	 * indexed the same as the patterns passed to the constructor.
+	 */
+	public int[][] searchAll(CharSequence text) {
+		int[][] found = new int[patterns.length][];
+		int[] counts = new int[patterns.length];
+		int state = 0;
+		for (int i = 0; i < text.length(); i++) {
+			state = next[state * classes + charClass[text.charAt(i)]];
+			for (int s = output[state] >= 0 ? state : outputLink[state]; s > 0; s = outputLink[s]) {
+				int p = output[s];
+				if (found[p] == null)
+					found[p] = new int[4];
+				else if (counts[p] == found[p].length)
+					found[p] = Arrays.copyOf(found[p], counts[p] * 2);
+				found[p][counts[p]++] = i - patterns[p].length() + 1;
+			}
+		}
+		for (int p = 0; p < patterns.length; p++) {
+			int first = duplicate[p] >= 0 ? duplicate[p] : p;
+			found[p] = found[first] == null ? new int[0] : Arrays.copyOf(found[first], counts[first]);
+		}
+		return found;
+	}
+}
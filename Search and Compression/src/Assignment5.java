@@ -8,27 +8,40 @@ import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.util.Arrays;
-import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
 
 import javax.swing.BorderFactory;
 import javax.swing.Box;
 import javax.swing.BoxLayout;
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
 import javax.swing.JComboBox;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JProgressBar;
 import javax.swing.JScrollPane;
 import javax.swing.JTabbedPane;
 import javax.swing.JTextArea;
 import javax.swing.JTextField;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
 import javax.swing.border.Border;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultHighlighter;
+import javax.swing.text.Highlighter;
 
 /**
  * Handout code for assignment 5.
@@ -42,16 +55,35 @@ public class Assignment5 {
 	private static final int COMP_OUTPUT_ROWS = 20;
 	private static final int COMP_OUTPUT_COLS = 50;
 	private static final int LAYOUT_GAP = 5;
+	private static final int MAX_HIGHLIGHTS = 10000;
+	// how long typing has to pause, in milliseconds, before a fuzzy search.
+	private static final int FUZZY_DELAY = 150;
+	private static final Color HIGHLIGHT_COLOR = new Color(255, 255, 160);
 
 	private static final Charset CHARSET = StandardCharsets.UTF_8;
 
 	private static final String DEFAULT_EDITOR_FILE = "data/war_and_peace.txt";
 	private static final String DEFAULT_EDITOR_TEXT = "data/war_and_peace.txt not found, please load a file manually.";
 
+	// the search engines that answer from an index of the text rather than
+	// scanning it.
+	private static final String INDEX_ENGINE = "Suffix array";
+	private static final String FM_ENGINE = "FM-index";
+	private static final String FUZZY_ENGINE = "Fuzzy ";
+	private static final Integer[] FUZZY_ERRORS = { 1, 2, 3 };
+
+	// compression jobs run one at a time, off the event thread.
+	private static final ExecutorService COMPRESSION_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "compression");
+		thread.setDaemon(true);
+		return thread;
+	});
+
 	// the list of algorithms in the dropdown box. if you wanted to add another,
-	// you would include it here and add another case in the onAlgorithmRun
-	// method.
-	private static final String[] ALGORITHMS = { "Huffman coding", "Lempel Ziv" };
+	// you would include it here and add another case in codecFor, and in
+	// CompressionJob if it needs one.
+	private static final String[] ALGORITHMS = { "Huffman coding", "Lempel Ziv", "Lempel Ziv + Huffman", "Burrows Wheeler",
+			"rANS coding", "Order-1 Huffman", "LZW" };
 
 	private JFrame frame;
 	private JFileChooser fileChooser;
@@ -60,92 +92,351 @@ public class Assignment5 {
 	private JTextField searchField;
 	private JTextArea textEditor;
 
+	// the file loaded into the editor, mapped into memory, and whether the
+	// text has been edited since. while it hasn't, searches run over the
+	// file's bytes rather than a copy of the editor's text, and the suffix
+	// array is the one saved next to the file. searches that need the text
+	// share one copy of it, kept until the next edit.
+	private File editorFile;
+	private MappedByteBuffer editorBytes;
+	private boolean editorEdited;
+	private String editorText;
+	private SuffixArray editorIndex;
+	private FMIndex editorFMIndex;
+	private byte[] editorFMText;
+
+	// search state. the pattern is compiled once and kept until it or the
+	// engine changes, and the matches are kept until the text changes, so
+	// pressing enter again just moves on to the next one.
+	private JComboBox<String> searchEngine;
+	private JCheckBox fuzzyBox;
+	private JCheckBox parallelBox;
+	private JComboBox<Integer> fuzzyErrors;
+	private JLabel searchStatus;
+	private String searchText;
+	private String searchPatternEngine;
+	private SubstringSearch searchPattern;
+	private int[] searchMatches;
+	private int searchMatch;
+	private Timer searchDelay;
+
 	// compression components and state.
 	private JComboBox<String> list;
+	private JComboBox<String> lzLevel;
+	private JCheckBox framedBox;
+	private JCheckBox streamBox;
 	private JLabel compressionFileSelection;
 	private JTextArea compressionOutput;
 	private File compressionInputFile;
 	private File compressionOutputFile;
+	private JButton compressionRun;
+	private JButton compressionCancel;
+	private JProgressBar compressionProgress;
+	private CompressionJob compressionJob;
 
 	public Assignment5() {
 		initialise();
 	}
 
 	/**
-	 * Handles all the logic of setting up and running each algorithm, such as
-	 * making input and output streams, and writing some useful information to
-	 * the output area in the GUI.
+	 * Checks the chosen files and starts a CompressionJob to run the algorithm
+	 * in the background, with the run button disabled until it's finished.
 	 */
 	private void onAlgorithmRun() {
-		try {
-			if (compressionInputFile == null || !compressionInputFile.exists()) {
-				JOptionPane.showMessageDialog(frame, "Input file does not exist or is unselected.");
-				return;
-			}
-			if (compressionOutputFile == null) {
-				JOptionPane.showMessageDialog(frame, "Output file is unselected.");
-				return;
-			}
-			if (!compressionInputFile.getName().endsWith(".txt")) {
-				JOptionPane.showMessageDialog(frame, "This assignment only deals with compressing .txt files.");
-				// but let them do it anyway.
-			}
+		if (compressionInputFile == null || !compressionInputFile.exists()) {
+			JOptionPane.showMessageDialog(frame, "Input file does not exist or is unselected.");
+			return;
+		}
+		if (compressionOutputFile == null) {
+			JOptionPane.showMessageDialog(frame, "Output file is unselected.");
+			return;
+		}
+		if (!compressionInputFile.getName().endsWith(".txt")) {
+			JOptionPane.showMessageDialog(frame, "This assignment only deals with compressing .txt files.");
+			// but let them do it anyway.
+		}
 
-			// clear the output area.
-			compressionOutput.setText("");
-
-			String algorithm = (String) list.getSelectedItem();
-			if (algorithm.equals("Huffman coding")) {
-				// read in the file.
-				String text = readFile(compressionInputFile);
-
-				// run the algorithms.
-				HuffmanCoding huffman = new HuffmanCoding(text);
-				String encoded = huffman.encode(text);
-				String decoded = huffman.decode(encoded);
-
-				if (!encoded.matches("[01]*"))
-					compressionOutput.append(
-							"ERROR: encoded string contains characters that are not 0 or 1. this is an invalid huffman encoding.\n\n");
-
-				// write out the encoded text.
-				List<String> lines = Arrays.asList(encoded);
-				Files.write(compressionOutputFile.toPath(), lines, CHARSET);
-
-				// figure out file sizes. the encoded string represents bits,
-				// so we divide it by 8 to get the size in bytes.
-				compressionOutput.append("input length:  " + compressionInputFile.length() + " bytes \n");
-				compressionOutput.append("output length: " + encoded.length() / 8 + " bytes \n\n");
-
-				// check they're the same and display user output.
-				compressionOutput
-					.append("original and decoded texts " + (text.equals(decoded) ? "" : "DO NOT ") + "match.\n");
-				compressionOutput.append(huffman.getInformation());
-
-			} else if (algorithm.equals("Lempel Ziv")) {
-				// read in the file.
-				String text = readFile(compressionInputFile);
-
-				// run the algorithms.
-				LempelZiv lz = new LempelZiv();
-				String compressed = lz.compress(text);
-				String decompressed = lz.decompress(compressed);
-
-				// write out the encoded text.
-				List<String> lines = Arrays.asList(compressed);
-				Files.write(compressionOutputFile.toPath(), lines, CHARSET);
-
-				// figure out file sizes, in characters this time.
-				compressionOutput.append("input length:  " + text.length() + " characters \n");
-				compressionOutput.append("output length: " + compressed.length() + " characters \n");
-
-				// check they're the same and display user output.
-				compressionOutput.append(
-						"\noriginal and decoded texts " + (text.equals(decompressed) ? "" : "DO NOT ") + "match!\n");
-				compressionOutput.append(lz.getInformation());
+		// clear the output area.
+		compressionOutput.setText("");
+
+		CompressionJob job = new CompressionJob((String) list.getSelectedItem(), lzLevel.getSelectedIndex(),
+				compressionInputFile,
+				compressionOutputFile, framedBox.isSelected(), streamBox.isSelected(), compressionOutput);
+		job.addPropertyChangeListener(ev -> {
+			if (ev.getPropertyName().equals("progress")) {
+				compressionProgress.setValue((Integer) ev.getNewValue());
+			} else if (ev.getPropertyName().equals("phase")) {
+				compressionProgress.setString((String) ev.getNewValue());
+			} else if (ev.getNewValue() == SwingWorker.StateValue.DONE) {
+				compressionRun.setEnabled(true);
+				compressionCancel.setEnabled(false);
+				compressionJob = null;
 			}
+		});
+		compressionJob = job;
+		compressionRun.setEnabled(false);
+		compressionCancel.setEnabled(true);
+		compressionProgress.setValue(0);
+		COMPRESSION_EXECUTOR.execute(job);
+	}
+
+	/**
+	 * Asks the running job to stop. The run button comes back once it has,
+	 * when the job is done.
+	 */
+	private void onAlgorithmCancel() {
+		if (compressionJob != null) {
+			compressionJob.requestCancel();
+			compressionCancel.setEnabled(false);
+			compressionProgress.setString("cancelling");
+		}
+	}
+
+	/**
+	 * Makes codecs for one of the entries in ALGORITHMS, for running over
+	 * blocks.
+	 */
+	static Supplier<Codec> codecFor(String algorithm) {
+		return codecFor(algorithm, LempelZiv.GREEDY);
+	}
+
+	/**
+	 * Makes codecs for one of the entries in ALGORITHMS, with Lempel Ziv
+	 * parsing at the given level.
+	 */
+	static Supplier<Codec> codecFor(String algorithm, int level) {
+		if (algorithm.equals("Huffman coding"))
+			return () -> HuffmanCoding.CODEC;
+		else if (algorithm.equals("Lempel Ziv"))
+			return () -> new LempelZiv(LempelZiv.DEFAULT_WINDOW_SIZE, level);
+		else if (algorithm.equals("Lempel Ziv + Huffman"))
+			return LempelZivHuffman::new;
+		else if (algorithm.equals("Burrows Wheeler"))
+			return BurrowsWheeler::new;
+		else if (algorithm.equals("rANS coding"))
+			return () -> RansCoding.CODEC;
+		else if (algorithm.equals("Order-1 Huffman"))
+			return OrderOneHuffman::new;
+		else if (algorithm.equals("LZW"))
+			return LZW::new;
+		throw new IllegalArgumentException("unknown algorithm " + algorithm);
+	}
+
+	/**
+	 * Runs when enter is pressed in the search box. A new pattern, or a search
+	 * after the text has changed, finds and highlights every match and selects
+	 * the first. Otherwise it selects the next match along, wrapping around at
+	 * the end.
+	 */
+	private void onSearch() {
+		String pattern = searchField.getText();
+		if (pattern.isEmpty())
+			return;
+
+		if (findMatches(pattern))
+			searchMatch = 0;
+		else if (searchMatches.length > 0)
+			searchMatch = (searchMatch + 1) % searchMatches.length;
+
+		if (searchMatches.length == 0) {
+			searchStatus.setText("");
+			JOptionPane.showMessageDialog(frame, "Pattern not found.");
+		} else {
+			int index = searchMatches[searchMatch];
+			searchStatus.setText((searchMatch + 1) + " of " + searchMatches.length + " (" + searchEngineName() + ")");
+			textEditor.requestFocus();
+			textEditor.setSelectionStart(index);
+			textEditor.setSelectionEnd(index + pattern.length());
+			textEditor.setSelectionColor(Color.YELLOW);
+		}
+	}
+
+	/**
+	 * Runs when typing in the search box pauses while fuzzy search is on,
+	 * highlighting the matches as the pattern is typed.
+	 */
+	private void onSearchTyped() {
+		String pattern = searchField.getText();
+		if (pattern.isEmpty()) {
+			textEditor.getHighlighter().removeAllHighlights();
+			searchStatus.setText("");
+			return;
+		}
+		findMatches(pattern);
+		searchStatus.setText(searchMatches.length + " matches (" + searchEngineName() + ")");
+	}
+
+	/**
+	 * Finds and highlights every match of pattern, unless the matches from
+	 * the last search are still current. Returns whether they were found
+	 * again.
+	 */
+	private boolean findMatches(String pattern) {
+		String engine = fuzzyBox.isSelected() ? FUZZY_ENGINE + fuzzyErrors.getSelectedItem()
+				: (String) searchEngine.getSelectedItem();
+		boolean parallel = parallelBox.isSelected() && !fuzzyBox.isSelected();
+		if (!pattern.equals(searchText) || !engine.equals(searchPatternEngine)
+				|| parallel != searchPattern instanceof ParallelSearch) {
+			searchText = pattern;
+			searchPatternEngine = engine;
+			boolean indexed = engine.equals(INDEX_ENGINE) || engine.equals(FM_ENGINE) || fuzzyBox.isSelected();
+			searchPattern = indexed ? null : SubstringSearch.compile(engine, pattern);
+			if (parallel && searchPattern != null)
+				searchPattern = new ParallelSearch(searchPattern);
+			searchMatches = null;
+		}
+		if (searchMatches != null)
+			return false;
+
+		if (fuzzyBox.isSelected()) {
+			// approximate matches are found by where they end, so highlight
+			// a pattern's length back from there. ends closer together than
+			// that would highlight the same text, so they count as one.
+			int k = (Integer) fuzzyErrors.getSelectedItem();
+			searchMatches = new Myers(pattern).searchRuns(editorText(), k, pattern.length());
+			for (int i = 0; i < searchMatches.length; i++)
+				searchMatches[i] = Math.max(0, searchMatches[i] - pattern.length());
+		} else if (engine.equals(FM_ENGINE)) {
+			// the FM-index works on bytes, so its matches are byte offsets.
+			searchMatches = editorFMIndex().locate(pattern);
+			MappedText.charIndices(ByteBuffer.wrap(editorFMText), searchMatches);
+		} else if (searchPattern == null) {
+			searchMatches = editorIndex().locate(pattern);
+		} else if (searchPattern instanceof KMP && editorBytes != null && !editorEdited) {
+			// the text is still what's on disk, so search that. only KMP and
+			// the first-last filter have byte level versions.
+			searchMatches = KMP.searchAll(editorBytes, pattern.getBytes(CHARSET));
+			MappedText.charIndices(editorBytes, searchMatches);
+		} else if (searchPattern instanceof FirstLastFilter && editorBytes != null && !editorEdited) {
+			searchMatches = FirstLastFilter.searchAll(editorBytes, pattern.getBytes(CHARSET));
+			MappedText.charIndices(editorBytes, searchMatches);
+		} else {
+			searchMatches = searchPattern.searchAll(editorText());
+		}
+		highlightMatches(pattern.length());
+		return true;
+	}
+
+	private String searchEngineName() {
+		if (fuzzyBox.isSelected())
+			return "Myers, up to " + fuzzyErrors.getSelectedItem() + " edits";
+		if (searchPattern instanceof ParallelSearch)
+			return SubstringSearch.name(((ParallelSearch) searchPattern).engine()) + ", parallel";
+		return searchPattern == null ? searchPatternEngine : SubstringSearch.name(searchPattern);
+	}
+
+	/**
+	 * The suffix array of the editor's text, made the first time it's needed.
+	 * For a file that hasn't been edited, the index saved next to it is
+	 * loaded, or built and saved if there isn't one, so later runs over the
+	 * same file start instantly.
+	 */
+	private SuffixArray editorIndex() {
+		if (editorIndex == null) {
+			String text = editorText();
+			if (editorFile != null && !editorEdited)
+				editorIndex = SuffixArray.loadOrBuild(editorFile, text);
+			else
+				editorIndex = new SuffixArray(text);
+		}
+		return editorIndex;
+	}
+
+	/**
+	 * The editor's text, copied out of the document the first time it's
+	 * needed after an edit rather than for every search.
+	 */
+	private String editorText() {
+		if (editorText == null)
+			editorText = textEditor.getText();
+		return editorText;
+	}
+
+	/**
+	 * The FM-index of the editor's text, made the first time it's needed.
+	 */
+	private FMIndex editorFMIndex() {
+		if (editorFMIndex == null) {
+			editorFMText = editorText().getBytes(CHARSET);
+			editorFMIndex = new FMIndex(editorFMText);
+		}
+		return editorFMIndex;
+	}
+
+	/**
+	 * Runs when a keyword file is chosen. Every line of the file is a pattern,
+	 * and all of them are found in one pass over the editor's text with an
+	 * AhoCorasick automaton. Matches are highlighted, up to MAX_HIGHLIGHTS of
+	 * them, and the patterns that occur are listed with their counts, most
+	 * frequent first.
+	 */
+	private void onKeywordScan(File file) {
+		String[] keywords;
+		try {
+			keywords = Files.readAllLines(file.toPath(), CHARSET).stream().filter(line -> !line.isEmpty()).distinct()
+					.toArray(String[]::new);
 		} catch (IOException e) {
 			e.printStackTrace();
+			return;
+		}
+		if (keywords.length == 0)
+			return;
+
+		String text = editorText();
+		long start = System.nanoTime();
+		AhoCorasick automaton = new AhoCorasick(keywords);
+		long built = System.nanoTime();
+		int[][] found = automaton.searchAll(text);
+		long scanned = System.nanoTime();
+
+		// the search box's matches are no longer the ones highlighted.
+		searchMatches = null;
+		Highlighter highlighter = textEditor.getHighlighter();
+		highlighter.removeAllHighlights();
+		Highlighter.HighlightPainter painter = new DefaultHighlighter.DefaultHighlightPainter(HIGHLIGHT_COLOR);
+		int highlights = 0;
+		int total = 0;
+		try {
+			for (int p = 0; p < found.length; p++) {
+				total += found[p].length;
+				for (int i = 0; i < found[p].length && highlights < MAX_HIGHLIGHTS; i++, highlights++)
+					highlighter.addHighlight(found[p][i], found[p][i] + keywords[p].length(), painter);
+			}
+		} catch (BadLocationException e) {
+			e.printStackTrace();
+		}
+
+		Integer[] order = new Integer[keywords.length];
+		for (int p = 0; p < order.length; p++)
+			order[p] = p;
+		Arrays.sort(order, (a, b) -> found[b].length - found[a].length);
+		StringBuilder report = new StringBuilder();
+		report.append(String.format("%d keywords, %d states, built in %.2f ms\n", keywords.length, automaton.states(),
+				(built - start) / 1e6));
+		report.append(String.format("%d matches in %.2f ms\n\n", total, (scanned - built) / 1e6));
+		for (int p : order) {
+			if (found[p].length == 0)
+				break;
+			report.append(keywords[p]).append(": ").append(found[p].length).append('\n');
+		}
+
+		JTextArea area = new JTextArea(report.toString(), 20, 40);
+		area.setEditable(false);
+		JOptionPane.showMessageDialog(frame, new JScrollPane(area), "Keywords", JOptionPane.PLAIN_MESSAGE);
+	}
+
+	/**
+	 * Highlights the current matches, up to MAX_HIGHLIGHTS of them.
+	 */
+	private void highlightMatches(int length) {
+		Highlighter highlighter = textEditor.getHighlighter();
+		highlighter.removeAllHighlights();
+		Highlighter.HighlightPainter painter = new DefaultHighlighter.DefaultHighlightPainter(HIGHLIGHT_COLOR);
+		try {
+			for (int i = 0; i < searchMatches.length && i < MAX_HIGHLIGHTS; i++)
+				highlighter.addHighlight(searchMatches[i], searchMatches[i] + length, painter);
+		} catch (BadLocationException e) {
+			e.printStackTrace();
 		}
 	}
 
@@ -173,30 +464,70 @@ public class Assignment5 {
 				// run the file chooser and check the user didn't hit cancel
 				if (fileChooser.showOpenDialog(frame) == JFileChooser.APPROVE_OPTION) {
 					File file = fileChooser.getSelectedFile();
-					textEditor.setText(readFile(file));
+					loadEditor(file);
 				}
 			}
 		});
 
+		// a keyword file, one pattern per line, is searched for all at once.
+		JButton keywords = new JButton("Keywords");
+		keywords.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent ev) {
+				fileChooser.setCurrentDirectory(new File("."));
+				fileChooser.setDialogTitle("Select keyword file.");
+				fileChooser.setFileSelectionMode(JFileChooser.FILES_ONLY);
+
+				if (fileChooser.showOpenDialog(frame) == JFileChooser.APPROVE_OPTION)
+					onKeywordScan(fileChooser.getSelectedFile());
+			}
+		});
+
 		// next, add in the search box on the top right.
 		searchField = new JTextField(SEARCH_COLS);
 		searchField.setMaximumSize(new Dimension(0, 25));
 		searchField.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
-				String pattern = searchField.getText();
-				String text = textEditor.getText();
-				int index = new KMP(pattern, text).search(pattern, text);
-
-				if (index == -1) {
-					JOptionPane.showMessageDialog(frame, "Pattern not found.");
-				} else {
-					textEditor.requestFocus();
-					textEditor.setSelectionStart(index);
-					textEditor.setSelectionEnd(index + pattern.length());
-					textEditor.setSelectionColor(Color.YELLOW);
-				}
+				onSearch();
+			}
+		});
+		searchEngine = new JComboBox<>(SubstringSearch.ENGINES);
+		searchEngine.addItem(INDEX_ENGINE);
+		searchEngine.addItem(FM_ENGINE);
+		searchEngine.setMaximumSize(searchEngine.getPreferredSize());
+
+		// fuzzy search allows a few edits, and searches as the pattern is
+		// typed.
+		fuzzyBox = new JCheckBox("Fuzzy");
+		fuzzyErrors = new JComboBox<>(FUZZY_ERRORS);
+		fuzzyErrors.setMaximumSize(fuzzyErrors.getPreferredSize());
+
+		// parallel search splits the text between the fork-join workers.
+		parallelBox = new JCheckBox("Parallel");
+		// every key restarts the delay, so a fuzzy search only runs once
+		// typing pauses rather than once per key.
+		searchDelay = new Timer(FUZZY_DELAY, new ActionListener() {
+			public void actionPerformed(ActionEvent ev) {
+				if (fuzzyBox.isSelected())
+					onSearchTyped();
 			}
 		});
+		searchDelay.setRepeats(false);
+		searchField.getDocument().addDocumentListener(new DocumentListener() {
+			public void insertUpdate(DocumentEvent e) {
+				if (fuzzyBox.isSelected())
+					searchDelay.restart();
+			}
+
+			public void removeUpdate(DocumentEvent e) {
+				if (fuzzyBox.isSelected())
+					searchDelay.restart();
+			}
+
+			public void changedUpdate(DocumentEvent e) {
+				// attribute changes only, the text is the same.
+			}
+		});
+		searchStatus = new JLabel();
 
 		// both of the previous components go in a 'controls' panel at the top
 		// of the pane.
@@ -210,20 +541,51 @@ public class Assignment5 {
 
 		// add all the components to the frame.
 		controls.add(load);
+		controls.add(Box.createRigidArea(new Dimension(LAYOUT_GAP, 0)));
+		controls.add(keywords);
 		controls.add(Box.createHorizontalGlue());
 		controls.add(new JLabel("Search"));
 		controls.add(Box.createRigidArea(new Dimension(LAYOUT_GAP, 0)));
 		controls.add(searchField);
+		controls.add(Box.createRigidArea(new Dimension(LAYOUT_GAP, 0)));
+		controls.add(searchEngine);
+		controls.add(Box.createRigidArea(new Dimension(LAYOUT_GAP, 0)));
+		controls.add(fuzzyBox);
+		controls.add(fuzzyErrors);
+		controls.add(parallelBox);
+		controls.add(Box.createRigidArea(new Dimension(LAYOUT_GAP, 0)));
+		controls.add(searchStatus);
 
 		// then, we need to make the editor area itself.
 		textEditor = new JTextArea(EDITOR_ROWS, EDITOR_COLS);
 		textEditor.setLineWrap(true);
 		textEditor.setWrapStyleWord(true);
 		textEditor.setEditable(true);
+		textEditor.getDocument().addDocumentListener(new DocumentListener() {
+			public void insertUpdate(DocumentEvent e) {
+				editorEdited = true;
+				editorText = null;
+				editorIndex = null;
+				editorFMIndex = null;
+				searchMatches = null;
+			}
+
+			public void removeUpdate(DocumentEvent e) {
+				editorEdited = true;
+				editorText = null;
+				editorIndex = null;
+				editorFMIndex = null;
+				searchMatches = null;
+			}
+
+			public void changedUpdate(DocumentEvent e) {
+				// attribute changes only, the text is the same.
+			}
+		});
 
 		File defaultFile = new File(DEFAULT_EDITOR_FILE);
 		if (defaultFile.exists())
-			textEditor.setText(readFile(defaultFile));
+			loadEditor(defaultFile);
 		else
 			textEditor.setText(DEFAULT_EDITOR_TEXT);
 
@@ -283,9 +645,30 @@ public class Assignment5 {
 			}
 		});
 
-		// a selection box for algorithms.
+		// a selection box for algorithms, and one for how hard lempel ziv
+		// looks for a good parse.
 		list = new JComboBox<>(ALGORITHMS);
 		list.setMaximumSize(list.getPreferredSize());
+		lzLevel = new JComboBox<>(LempelZiv.LEVELS);
+		lzLevel.setToolTipText("Lempel Ziv parse level");
+		lzLevel.setEnabled(false);
+		list.addActionListener(ev -> lzLevel.setEnabled(list.getSelectedItem().equals("Lempel Ziv")));
+
+		JPanel choices = new JPanel();
+		choices.setLayout(new BorderLayout());
+		choices.add(list, BorderLayout.NORTH);
+		choices.add(lzLevel, BorderLayout.SOUTH);
+
+		// and whether to split the input into blocks compressed in parallel,
+		// or stream it through a block at a time.
+		framedBox = new JCheckBox("Parallel blocks");
+		streamBox = new JCheckBox("Stream (constant memory)");
+
+		JPanel options = new JPanel();
+		options.setLayout(new BorderLayout());
+		options.add(choices, BorderLayout.NORTH);
+		options.add(framedBox, BorderLayout.CENTER);
+		options.add(streamBox, BorderLayout.SOUTH);
 
 		// put it all together.
 		JPanel leftTop = new JPanel();
@@ -294,15 +677,31 @@ public class Assignment5 {
 		leftTop.setLayout(layout);
 		leftTop.add(load, BorderLayout.NORTH);
 		leftTop.add(save, BorderLayout.CENTER);
-		leftTop.add(list, BorderLayout.SOUTH);
+		leftTop.add(options, BorderLayout.SOUTH);
 
-		// a go button.
-		JButton run = new JButton("Run");
-		run.addActionListener(new ActionListener() {
+		// a go button, and a way to stop a run that's taking too long.
+		compressionRun = new JButton("Run");
+		compressionRun.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent ev) {
 				onAlgorithmRun();
 			}
 		});
+		compressionCancel = new JButton("Cancel");
+		compressionCancel.setEnabled(false);
+		compressionCancel.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent ev) {
+				onAlgorithmCancel();
+			}
+		});
+		compressionProgress = new JProgressBar(0, 100);
+		compressionProgress.setStringPainted(true);
+		compressionProgress.setString("");
+
+		JPanel buttons = new JPanel();
+		buttons.setLayout(new BorderLayout());
+		buttons.add(compressionProgress, BorderLayout.NORTH);
+		buttons.add(compressionRun, BorderLayout.CENTER);
+		buttons.add(compressionCancel, BorderLayout.EAST);
 
 		compressionFileSelection = new JLabel("<html>input:<br>output:</html>");
 
@@ -311,7 +710,7 @@ public class Assignment5 {
 		layout.setVgap(LAYOUT_GAP);
 		leftBottom.setLayout(layout);
 		leftBottom.add(compressionFileSelection, BorderLayout.NORTH);
-		leftBottom.add(run, BorderLayout.SOUTH);
+		leftBottom.add(buttons, BorderLayout.SOUTH);
 
 		// the left panel is just leftTop, a bunch of vertical space, and the
 		// run button at the bottom.
@@ -407,6 +806,22 @@ public class Assignment5 {
 		frame.setVisible(true);
 	}
 
+	/**
+	 * Loads a file into the editor, keeping it mapped for searching.
+	 */
+	private void loadEditor(File file) {
+		textEditor.setText(readFile(file));
+		try {
+			editorBytes = MappedText.map(file);
+		} catch (IOException e) {
+			e.printStackTrace();
+			editorBytes = null;
+		}
+		// setting the text counts as an edit, so start clean after it.
+		editorFile = file;
+		editorEdited = false;
+	}
+
 	/**
 	 * A helper method for reading a file into a string.
 	 */
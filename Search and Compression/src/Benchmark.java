@@ -0,0 +1,275 @@
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Benchmarks for the search engines and codecs over every file in data/,
+ * reporting throughput and how much each operation allocates. Testing checks
+ * that things are right; this is for checking that a change hasn't made them
+ * slower.
+ *
+ * Run from the project directory with
+ *
+ *     java Benchmark [name regex] [-engines Brute,KMP,...] [-quick]
+ *
+ * Benchmarks are named like search/KMP/pi.txt/1M/len16/miss,
+ * search-bytes/First-last/pi.txt/full/len4/hit, decompress/Lempel Ziv
+ * Lazy/taisho.txt/full or count/parallel/pi.txt/full, and only those whose
+ * name contains a match for the regex are run. Search benchmarks find every
+ * match of a pattern of 4, 16 or 64 chars, either taken from the middle of
+ * the text (a hit) or the same with its last char changed to one that never
+ * occurs (a miss, which still has to get through all the partial matches).
+ * The search-bytes ones do the same with KMP and the first-last filter over
+ * the mapped file, as the editor does for a file it hasn't edited. Inputs are
+ * the first 64K, the first 1M, and all of each file, in chars for search and
+ * bytes for everything else.
+ *
+ * Each benchmark warms up for WARMUP iterations then measures ITERATIONS,
+ * each running the operation for at least ITERATION_NANOS. The score is the
+ * mean throughput in MB/s of input, with the spread between the slowest and
+ * fastest iteration, and the allocation is per operation as counted by the
+ * JVM across every thread, so the fork-join workers of the parallel versions
+ * count too. Allocation is worth watching as much as time: most of the slow
+ * versions of these algorithms were slow because they allocated.
+ * Compression benchmarks also show the compressed size as a percentage of
+ * the input, so a faster codec can be weighed against what it gives up.
+ */
+public class Benchmark {
+	private static final int WARMUP = 3;
+	private static final int ITERATIONS = 5;
+	private static final long ITERATION_NANOS = 200_000_000L;
+
+	private static final int[] PATTERN_LENGTHS = { 4, 16, 64 };
+	private static final int[] SIZES = { 1 << 16, 1 << 20, Integer.MAX_VALUE };
+	private static final String[] CODECS = { "Huffman coding", "Lempel Ziv", "Lempel Ziv + Huffman",
+			"Burrows Wheeler", "rANS coding", "Order-1 Huffman", "LZW" };
+
+	// results go here so the JIT can't throw the work away.
+	private static volatile Object sink;
+
+	private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory
+			.getThreadMXBean();
+
+	private final Pattern filter;
+	private final List<String> engines;
+	private final int warmup;
+	private final int iterations;
+
+	private Benchmark(Pattern filter, List<String> engines, boolean quick) {
+		this.filter = filter;
+		this.engines = engines;
+		this.warmup = quick ? 1 : WARMUP;
+		this.iterations = quick ? 2 : ITERATIONS;
+	}
+
+	public static void main(String[] args) throws IOException {
+		Pattern filter = Pattern.compile("");
+		List<String> engines = Arrays.asList("Brute", "KMP", "Auto");
+		boolean quick = false;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-engines"))
+				engines = Arrays.asList(args[++i].split(","));
+			else if (args[i].equals("-quick"))
+				quick = true;
+			else
+				filter = Pattern.compile(args[i]);
+		}
+
+		File[] files = new File("data").listFiles((dir, name) -> name.endsWith(".txt"));
+		if (files == null) {
+			System.err.println("no data directory, run this from the project directory");
+			return;
+		}
+		Arrays.sort(files);
+
+		System.out.printf("%-60s %10s %20s %14s %8s%n", "benchmark", "MB/s", "min .. max", "alloc B/op", "ratio");
+		Benchmark benchmark = new Benchmark(filter, engines, quick);
+		for (File file : files) {
+			byte[] data = Files.readAllBytes(file.toPath());
+			benchmark.search(file.getName(), new String(data, StandardCharsets.UTF_8));
+			benchmark.searchBytes(file.getName(), MappedText.map(file));
+			benchmark.compression(file.getName(), data);
+			benchmark.counting(file.getName(), data);
+		}
+	}
+
+	private void search(String file, String text) {
+		for (int size : SIZES) {
+			if (size != Integer.MAX_VALUE && size >= text.length())
+				continue;
+			String input = size == Integer.MAX_VALUE ? text : text.substring(0, size);
+			for (int length : PATTERN_LENGTHS) {
+				if (length * 2 > input.length())
+					continue;
+				String hit = input.substring(input.length() / 2, input.length() / 2 + length);
+				String miss = hit.substring(0, length - 1) + '\u0000';
+				for (String engine : engines) {
+					SubstringSearch hitSearch = SubstringSearch.compile(engine, hit);
+					SubstringSearch missSearch = SubstringSearch.compile(engine, miss);
+					String name = "search/" + engine + "/" + file + "/" + sizeName(size) + "/len" + length;
+					run(name + "/hit", input.length(), "", () -> hitSearch.searchAll(input));
+					run(name + "/miss", input.length(), "", () -> missSearch.searchAll(input));
+				}
+			}
+		}
+	}
+
+	/**
+	 * The byte level searches, KMP and the first-last filter, over the mapped
+	 * file.
+	 */
+	private void searchBytes(String file, MappedByteBuffer mapped) {
+		for (int size : SIZES) {
+			if (size != Integer.MAX_VALUE && size >= mapped.limit())
+				continue;
+			ByteBuffer input = size == Integer.MAX_VALUE ? mapped : mapped.duplicate().limit(size).slice();
+			int n = input.limit();
+			for (int length : PATTERN_LENGTHS) {
+				if (length * 2 > n)
+					continue;
+				byte[] hit = new byte[length];
+				for (int i = 0; i < length; i++)
+					hit[i] = input.get(n / 2 + i);
+				byte[] miss = hit.clone();
+				miss[length - 1] = 0;
+				String name = "/" + file + "/" + sizeName(size) + "/len" + length;
+				run("search-bytes/KMP" + name + "/hit", n, "", () -> KMP.searchAll(input, hit));
+				run("search-bytes/KMP" + name + "/miss", n, "", () -> KMP.searchAll(input, miss));
+				run("search-bytes/First-last" + name + "/hit", n, "", () -> FirstLastFilter.searchAll(input, hit));
+				run("search-bytes/First-last" + name + "/miss", n, "", () -> FirstLastFilter.searchAll(input, miss));
+			}
+		}
+	}
+
+	private void compression(String file, byte[] data) {
+		for (int size : SIZES) {
+			if (size != Integer.MAX_VALUE && size >= data.length)
+				continue;
+			byte[] input = size == Integer.MAX_VALUE ? data : Arrays.copyOf(data, size);
+			for (String algorithm : codecNames()) {
+				Supplier<Codec> codec = codecFor(algorithm);
+				String suffix = "/" + algorithm + "/" + file + "/" + sizeName(size);
+				if (!filter.matcher("compress" + suffix).find() && !filter.matcher("decompress" + suffix).find())
+					continue;
+				byte[] compressed = codec.get().compress(input);
+				String ratio = String.format("%.1f%%", 100.0 * compressed.length / input.length);
+				run("compress" + suffix, input.length, ratio, () -> codec.get().compress(input));
+				run("decompress" + suffix, input.length, ratio, () -> codec.get().decompress(compressed));
+			}
+		}
+	}
+
+	/**
+	 * Byte counting as HuffmanCoding does it, on one thread and across the
+	 * fork-join pool, so the speedup can be read off side by side.
+	 */
+	private void counting(String file, byte[] data) {
+		for (int size : SIZES) {
+			if (size != Integer.MAX_VALUE && size >= data.length)
+				continue;
+			byte[] input = size == Integer.MAX_VALUE ? data : Arrays.copyOf(data, size);
+			String suffix = "/" + file + "/" + sizeName(size);
+			run("count/sequential" + suffix, input.length, "", () -> Histogram.count(input));
+			run("count/parallel" + suffix, input.length, "", () -> Histogram.countParallel(input));
+		}
+	}
+
+	/**
+	 * CODECS, with Lempel Ziv listed once for each of its levels.
+	 */
+	private static List<String> codecNames() {
+		List<String> names = new ArrayList<>();
+		for (String algorithm : CODECS) {
+			if (algorithm.equals("Lempel Ziv")) {
+				for (String level : LempelZiv.LEVELS)
+					names.add(algorithm + " " + level);
+			} else {
+				names.add(algorithm);
+			}
+		}
+		return names;
+	}
+
+	private static Supplier<Codec> codecFor(String name) {
+		for (int level = 0; level < LempelZiv.LEVELS.length; level++) {
+			if (name.equals("Lempel Ziv " + LempelZiv.LEVELS[level]))
+				return Assignment5.codecFor("Lempel Ziv", level);
+		}
+		return Assignment5.codecFor(name);
+	}
+
+	private static String sizeName(int size) {
+		if (size == Integer.MAX_VALUE)
+			return "full";
+		return size >= 1 << 20 ? (size >> 20) + "M" : (size >> 10) + "K";
+	}
+
+	/**
+	 * Runs one benchmark, if its name passes the filter, and prints its line
+	 * with note in the last column.
+	 */
+	private void run(String name, long inputLength, String note, Supplier<Object> operation) {
+		if (!filter.matcher(name).find())
+			return;
+
+		for (int i = 0; i < warmup; i++)
+			iteration(operation);
+
+		double[] rates = new double[iterations];
+		long allocated = 0;
+		long operations = 0;
+		for (int i = 0; i < iterations; i++) {
+			long[] result = iteration(operation);
+			rates[i] = inputLength * result[0] / (result[1] / 1e9) / (1 << 20);
+			allocated += result[2];
+			operations += result[0];
+		}
+
+		double mean = Arrays.stream(rates).average().orElse(0);
+		double min = Arrays.stream(rates).min().orElse(0);
+		double max = Arrays.stream(rates).max().orElse(0);
+		System.out.printf("%-60s %10.1f %9.1f .. %8.1f %14d %8s%n", name, mean, min, max, allocated / operations, note);
+	}
+
+	/**
+	 * Runs the operation until ITERATION_NANOS have passed, returning the
+	 * number of runs, the time taken and the bytes allocated.
+	 *
+	 * The bytes are those allocated by this thread and by every other thread
+	 * alive at the start, such as pool workers an operation hands work to.
+	 * The warmup starts any workers the operation needs. This thread is read
+	 * on its own, as reading the others allocates the arrays they're read
+	 * into, and that would show up on operations that allocate nothing.
+	 */
+	private static long[] iteration(Supplier<Object> operation) {
+		long thread = Thread.currentThread().getId();
+		long[] others = Arrays.stream(THREADS.getAllThreadIds()).filter(id -> id != thread).toArray();
+		long[] othersBefore = THREADS.getThreadAllocatedBytes(others);
+		long allocatedBefore = THREADS.getThreadAllocatedBytes(thread);
+		long start = System.nanoTime();
+		long count = 0;
+		long elapsed;
+		do {
+			sink = operation.get();
+			count++;
+			elapsed = System.nanoTime() - start;
+		} while (elapsed < ITERATION_NANOS);
+		long allocated = THREADS.getThreadAllocatedBytes(thread) - allocatedBefore;
+		long[] othersAfter = THREADS.getThreadAllocatedBytes(others);
+		for (int i = 0; i < others.length; i++) {
+			// -1 for a thread that has died since.
+			if (othersBefore[i] >= 0 && othersAfter[i] >= 0)
+				allocated += othersAfter[i] - othersBefore[i];
+		}
+		return new long[] { count, elapsed, allocated };
+	}
+}
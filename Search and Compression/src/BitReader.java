@@ -0,0 +1,97 @@
+/**
+ * Reads bits back out of a byte array written by a BitWriter, most significant
+ * bit first. Bytes are loaded into a 64 bit cache ahead of time, so peeking and
+ * skipping a few bits at a time is cheap.
+ */
+public class BitReader {
+	private final byte[] data;
+	private final long limit;
+
+	// the next byte to load into the cache, and the cache itself. the low
+	// cachedBits bits of cache are the next bits of the input.
+	private int next;
+	private long cache;
+	private int cachedBits;
+
+	public BitReader(byte[] data) {
+		this(data, 0);
+	}
+
+	/**
+	 * Starts reading at the given byte offset into data.
+	 */
+	public BitReader(byte[] data, int offset) {
+		this.data = data;
+		this.limit = (long) data.length * 8;
+		this.next = offset;
+	}
+
+	public int readBit() {
+		if (position() >= limit)
+			throw new IllegalArgumentException("read past the end of the input");
+		int bit = peekBits(1);
+		cachedBits--;
+		return bit;
+	}
+
+	/**
+	 * Reads count bits, anything from 0 to 64, and returns them right aligned.
+	 */
+	public long readBits(int count) {
+		if (position() + count > limit)
+			throw new IllegalArgumentException("read past the end of the input");
+		long value = 0;
+		while (count > 0) {
+			int take = Math.min(count, 32);
+			value = (value << take) | (peekBits(take) & 0xFFFFFFFFL);
+			cachedBits -= take;
+			count -= take;
+		}
+		return value;
+	}
+
+	/**
+	 * Returns the next count bits, from 1 to 32, without consuming them. Bits
+	 * past the end of the input read as zero, so callers that peek a fixed
+	 * width near the end should check remaining() once they've skipped what
+	 * they actually used.
+	 */
+	public int peekBits(int count) {
+		if (cachedBits < count)
+			refill();
+		return (int) (cache >>> (cachedBits - count)) & (int) ((1L << count) - 1);
+	}
+
+	/**
+	 * Consumes count bits, usually after looking at them with peekBits.
+	 */
+	public void skipBits(int count) {
+		while (count > 0) {
+			if (cachedBits == 0)
+				refill();
+			int take = Math.min(count, cachedBits);
+			cachedBits -= take;
+			count -= take;
+		}
+	}
+
+	/**
+	 * The number of bits read so far, including the starting offset.
+	 */
+	public long position() {
+		return (long) next * 8 - cachedBits;
+	}
+
+	public long remaining() {
+		return limit - position();
+	}
+
+	private void refill() {
+		// top the cache up to at least 57 bits, with zeros past the end.
+		while (cachedBits <= 56) {
+			cache = (cache << 8) | (next < data.length ? data[next] & 0xFF : 0);
+			next++;
+			cachedBits += 8;
+		}
+	}
+}
@@ -0,0 +1,77 @@
+import java.util.Arrays;
+
+/**
+ * Packs individual bits into a growable byte array. Bits are written most
+ * significant first, so the first bit written ends up in the top bit of the
+ * first byte. The last byte is padded with zeros when the array is taken.
+ */
+public class BitWriter {
+	private byte[] buffer;
+	private int size;
+
+	// bits that haven't made up a whole byte yet, right aligned.
+	private long pending;
+	private int pendingBits;
+
+	public BitWriter() {
+		this(64);
+	}
+
+	public BitWriter(int capacity) {
+		buffer = new byte[Math.max(capacity, 16)];
+	}
+
+	public void writeBit(int bit) {
+		writeBits(bit & 1, 1);
+	}
+
+	/**
+	 * Writes the low count bits of value, most significant first. count can be
+	 * anything from 0 to 64.
+	 */
+	public void writeBits(long value, int count) {
+		if (count > 56) {
+			// the pending buffer can only take 56 bits on top of what it holds.
+			writeBits(value >>> 32, count - 32);
+			writeBits(value, 32);
+			return;
+		}
+		value &= (1L << count) - 1;
+		pending = (pending << count) | value;
+		pendingBits += count;
+		while (pendingBits >= 8) {
+			pendingBits -= 8;
+			put((byte) (pending >>> pendingBits));
+		}
+	}
+
+	/**
+	 * Pads the current byte with zeros so the next write starts on a byte
+	 * boundary.
+	 */
+	public void align() {
+		if (pendingBits > 0)
+			writeBits(0, 8 - pendingBits);
+	}
+
+	/**
+	 * The number of bits written so far, not counting any padding.
+	 */
+	public long bitLength() {
+		return (long) size * 8 + pendingBits;
+	}
+
+	/**
+	 * Returns everything written so far, with the last byte padded out.
+	 */
+	public byte[] toByteArray() {
+		align();
+		return Arrays.copyOf(buffer, size);
+	}
+
+	private void put(byte b) {
+		if (size == buffer.length)
+			buffer = Arrays.copyOf(buffer, buffer.length * 2);
+		buffer[size++] = b;
+	}
+}
@@ -0,0 +1,109 @@
+import java.util.Arrays;
+
+/**
+ * Boyer-Moore search with both the bad character and good suffix rules. Each
+ * window is compared right to left, and on a mismatch the window moves by
+ * whichever rule allows the longer shift: the bad character rule lines the
+ * mismatched text char up with its last occurrence in the pattern, and the
+ * good suffix rule lines the part that did match up with the next place it
+ * occurs in the pattern. The good suffix rule matters for long patterns with
+ * repeated pieces, where the bad character shift alone is often short.
+ *
+ * As in Horspool, the bad character table is indexed by the low byte of each
+ * char and keeps the smallest shift in each slot.
+ */
+public class BoyerMoore implements SubstringSearch {
+	private static final int SLOTS = 256;
+
+	private final String search;
+	// badChar[c] is the distance from the last occurrence of c to the end of
+	// the pattern, and goodSuffix[i] is the shift after a mismatch at i.
+	private final int[] badChar;
+	private final int[] goodSuffix;
+
+	public BoyerMoore(String pattern) {
+		this.search = pattern;
+
+		int m = pattern.length();
+		badChar = new int[SLOTS];
+		Arrays.fill(badChar, m);
+		for (int i = 0; i < m - 1; i++)
+			badChar[pattern.charAt(i) & (SLOTS - 1)] = m - 1 - i;
+
+		goodSuffix = goodSuffixTable(pattern);
+	}
+
+	/**
+	 * suffix[i] is the length of the longest substring ending at i that is
+	 * also a suffix of the pattern.
+	 */
+	private static int[] suffixes(String x) {
+		int m = x.length();
+		int[] suffix = new int[m];
+		suffix[m - 1] = m;
+		int g = m - 1;
+		int f = m - 1;
+		for (int i = m - 2; i >= 0; i--) {
+			if (i > g && suffix[i + m - 1 - f] < i - g) {
+				suffix[i] = suffix[i + m - 1 - f];
+			} else {
+				if (i < g)
+					g = i;
+				f = i;
+				while (g >= 0 && x.charAt(g) == x.charAt(g + m - 1 - f))
+					g--;
+				suffix[i] = f - g;
+			}
+		}
+		return suffix;
+	}
+
+	private static int[] goodSuffixTable(String x) {
+		int m = x.length();
+		int[] shift = new int[m];
+		if (m == 0)
+			return shift;
+		int[] suffix = suffixes(x);
+
+		Arrays.fill(shift, m);
+		// where only a prefix of the pattern can line up with the matched
+		// part, shift so that prefix sits at the end of the matched part.
+		int j = 0;
+		for (int i = m - 1; i >= -1; i--) {
+			if (i == -1 || suffix[i] == i + 1) {
+				for (; j < m - 1 - i; j++) {
+					if (shift[j] == m)
+						shift[j] = m - 1 - i;
+				}
+			}
+		}
+		// where the matched part occurs again in full, shift to that.
+		for (int i = 0; i <= m - 2; i++)
+			shift[m - 1 - suffix[i]] = m - 1 - i;
+		return shift;
+	}
+
+	@Override
+	public String pattern() {
+		return search;
+	}
+
+	@Override
+	public int search(CharSequence text, int from, int to) {
+		int m = search.length();
+		if (m == 0)
+			return from <= to ? from : -1;
+
+		int t = from;
+		while (t + m <= to) {
+			int s = m - 1;
+			while (s >= 0 && search.charAt(s) == text.charAt(t + s))
+				s--;
+			if (s < 0)
+				return t;
+			int bad = badChar[text.charAt(t + s) & (SLOTS - 1)] - m + 1 + s;
+			t += Math.max(goodSuffix[s], bad);
+		}
+		return -1;
+	}
+}
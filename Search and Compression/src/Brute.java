@@ -1,5 +1,9 @@
-
-public class Brute {
+/**
+ * Brute force search, trying the pattern at every position of the text in
+ * turn. There are no tables to build, so for patterns of a few chars it is as
+ * quick as anything.
+ */
+public class Brute implements SubstringSearch {
 	private String text;
 	private String search;
 
@@ -8,14 +12,25 @@ public class Brute {
 		this.search = pattern;
 	}
 
+	public Brute(String pattern) {
+		this(pattern, null);
+	}
+
 	public int search(String pattern, String text) {
-		int t = 0;
+		return search(text, 0, text.length());
+	}
+
+	@Override
+	public int search(CharSequence text, int from, int to) {
+		int t = from;
 		int s = 0;
+		if (search.isEmpty())
+			return from <= to ? from : -1;
 
-		while (t + s < text.length()) {
+		while (t + s < to) {
 			if (search.charAt(s) == text.charAt(s + t)) {
 				s++;
-				if (s == pattern.length()) {
+				if (s == search.length()) {
 					return t;
 				}
 			} 
@@ -26,4 +41,9 @@ public class Brute {
 		}
 		return -1;
 	}
+
+	@Override
+	public String pattern() {
+		return search;
+	}
 }
@@ -0,0 +1,242 @@
+/**
+ * Block sorting compression, in the manner of bzip2. The Burrows-Wheeler
+ * transform sorts every rotation of the input and keeps the last byte of each,
+ * which groups bytes by what follows them and so gathers them into long runs.
+ * Move-to-front then turns those runs into runs of zeros, the zero runs are
+ * written as their lengths in bijective base two with two symbols, RUNA and
+ * RUNB, and what's left is Huffman coded with one canonical code.
+ *
+ * The transform is made from a suffix array, with an end marker that sorts
+ * before every byte. The marker isn't stored: its row, the primary index, is
+ * written instead, and the last column is n bytes long.
+ *
+ * The output is the original length, the primary index and the number of
+ * symbols, each in 32 bits, the code lengths, and then the coded symbols.
+ */
+public class BurrowsWheeler implements Codec {
+	private static final int R = 256;
+	private static final int RUNA = 0;
+	private static final int RUNB = 1;
+	// symbols 2 to 256 are move-to-front values 1 to 255.
+	private static final int ALPHABET = R + 1;
+
+	private int length;
+	private int primary;
+	private int symbols;
+	private int runs;
+	private int longestCode;
+
+	/**
+	 * The last column of the sorted rotations of some input, n + 1 bytes with
+	 * the end marker at row primary. The byte in that row is just a
+	 * placeholder.
+	 */
+	static final class Transform {
+		final byte[] last;
+		final int primary;
+
+		Transform(byte[] last, int primary) {
+			this.last = last;
+			this.primary = primary;
+		}
+	}
+
+	/**
+	 * Computes the transform of data. Row 0 is the end marker on its own, and
+	 * row r after that is the suffix at suffixes[r - 1].
+	 */
+	static Transform transform(byte[] data) {
+		int n = data.length;
+		byte[] last = new byte[n + 1];
+		if (n == 0)
+			return new Transform(last, 0);
+
+		int[] suffixes = SuffixArray.build(data);
+		last[0] = data[n - 1];
+		int primary = 0;
+		for (int r = 1; r <= n; r++) {
+			int start = suffixes[r - 1];
+			if (start == 0)
+				primary = r;
+			else
+				last[r] = data[start - 1];
+		}
+		return new Transform(last, primary);
+	}
+
+	/**
+	 * Undoes the transform. Every row's last byte precedes its first byte in
+	 * the input, and the k'th occurrence of a byte in the last column is the
+	 * k'th occurrence in the first column, which gives the row of the
+	 * previous rotation. Following that from row 0 reads the input backwards.
+	 */
+	static byte[] inverse(Transform transform) {
+		byte[] last = transform.last;
+		int n = last.length - 1;
+		int[] start = new int[R];
+		for (int r = 0; r <= n; r++) {
+			if (r != transform.primary)
+				start[last[r] & 0xFF]++;
+		}
+		// the end marker's row comes before all the others.
+		for (int c = 0, sum = 1; c < R; c++) {
+			int count = start[c];
+			start[c] = sum;
+			sum += count;
+		}
+
+		int[] previous = new int[n + 1];
+		for (int r = 0; r <= n; r++) {
+			if (r != transform.primary)
+				previous[r] = start[last[r] & 0xFF]++;
+		}
+
+		byte[] output = new byte[n];
+		int row = 0;
+		for (int i = n - 1; i >= 0; i--) {
+			output[i] = last[row];
+			row = previous[row];
+		}
+		return output;
+	}
+
+	@Override
+	public byte[] compress(byte[] data) {
+		Transform transform = transform(data);
+		length = data.length;
+		primary = transform.primary;
+
+		// move to front, with runs of zeros turned into RUNA and RUNB.
+		int[] coded = new int[Math.max(length, 1)];
+		int[] freq = new int[ALPHABET];
+		int count = 0;
+		int zeros = 0;
+		runs = 0;
+		byte[] order = new byte[R];
+		for (int c = 0; c < R; c++)
+			order[c] = (byte) c;
+		for (int r = 0; r < transform.last.length; r++) {
+			if (r == primary)
+				continue;
+			byte b = transform.last[r];
+			if (order[0] == b) {
+				zeros++;
+				continue;
+			}
+			if (zeros > 0) {
+				count = appendRun(coded, count, zeros, freq);
+				zeros = 0;
+			}
+			int index = 1;
+			while (order[index] != b)
+				index++;
+			System.arraycopy(order, 0, order, 1, index);
+			order[0] = b;
+			coded[count++] = index + 1;
+			freq[index + 1]++;
+		}
+		if (zeros > 0)
+			count = appendRun(coded, count, zeros, freq);
+		symbols = count;
+
+		CanonicalCode code = CanonicalCode.fromFrequencies(freq, CanonicalCode.DEFAULT_MAX_LENGTH);
+		longestCode = code.longest();
+		BitWriter out = new BitWriter(length / 3 + 64);
+		out.writeBits(length, 32);
+		out.writeBits(primary, 32);
+		out.writeBits(count, 32);
+		code.writeLengths(out);
+		for (int i = 0; i < count; i++)
+			code.write(out, coded[i]);
+		return out.toByteArray();
+	}
+
+	/**
+	 * Appends a run of zeros as its length in bijective base two, least
+	 * significant digit first, with RUNA for a 1 and RUNB for a 2. A run can
+	 * never take more symbols than it has zeros.
+	 */
+	private int appendRun(int[] coded, int count, int run, int[] freq) {
+		runs++;
+		while (run > 0) {
+			int symbol = (run & 1) == 1 ? RUNA : RUNB;
+			coded[count++] = symbol;
+			freq[symbol]++;
+			run = (run - 1 - symbol) >>> 1;
+		}
+		return count;
+	}
+
+	@Override
+	public byte[] decompress(byte[] compressed) {
+		return inverse(decodeTransform(compressed));
+	}
+
+	/**
+	 * Decodes as far as the transform and no further, which is all an
+	 * FMIndex needs.
+	 */
+	static Transform decodeTransform(byte[] compressed) {
+		BitReader in = new BitReader(compressed);
+		int n = (int) in.readBits(32);
+		int primary = (int) in.readBits(32);
+		int count = (int) in.readBits(32);
+		if (n < 0 || primary < 0 || primary > n || count < 0)
+			throw new IllegalArgumentException("burrows wheeler header is invalid");
+		byte[] last = new byte[n + 1];
+		if (n == 0)
+			return new Transform(last, 0);
+		CanonicalCode code = CanonicalCode.readLengths(in, ALPHABET);
+
+		byte[] order = new byte[R];
+		for (int c = 0; c < R; c++)
+			order[c] = (byte) c;
+		int row = 0;
+		int run = 0;
+		int weight = 1;
+		for (int i = 0; i < count; i++) {
+			int symbol = code.read(in);
+			if (symbol <= RUNB) {
+				run += (symbol + 1) * weight;
+				weight <<= 1;
+				continue;
+			}
+			if (run > 0) {
+				row = fill(last, row, primary, order[0], run);
+				run = 0;
+				weight = 1;
+			}
+			int index = symbol - 1;
+			byte b = order[index];
+			System.arraycopy(order, 0, order, 1, index);
+			order[0] = b;
+			row = fill(last, row, primary, b, 1);
+		}
+		if (run > 0)
+			row = fill(last, row, primary, order[0], run);
+		if (in.remaining() < 0 || row + (row == primary ? 1 : 0) != n + 1)
+			throw new IllegalArgumentException("burrows wheeler stream is truncated");
+		return new Transform(last, primary);
+	}
+
+	// writes count copies of b from row on, stepping over the primary row.
+	private static int fill(byte[] last, int row, int primary, byte b, int count) {
+		for (int i = 0; i < count; i++) {
+			if (row == primary)
+				row++;
+			if (row >= last.length)
+				throw new IllegalArgumentException("burrows wheeler stream is too long");
+			last[row++] = b;
+		}
+		return row;
+	}
+
+	/**
+	 * Shows the block size, primary index, and how much move-to-front and run
+	 * length coding shrank the transform.
+	 */
+	public String getInformation() {
+		return "block: " + length + " bytes, primary index " + primary + "\n" + "symbols: " + symbols + " ("
+				+ runs + " zero runs)\n" + "longest code: " + longestCode + " bits\n";
+	}
+}
@@ -0,0 +1,81 @@
+import java.util.Arrays;
+
+/**
+ * A growable byte array, in the spirit of StringBuilder, for building up
+ * compressed and decompressed output. As well as plain appends it can write
+ * variable length integers and copy bytes from earlier in its own output, which
+ * is all an LZ77 decoder needs.
+ */
+public class ByteBuilder {
+	private byte[] buffer;
+	private int size;
+
+	public ByteBuilder() {
+		this(64);
+	}
+
+	public ByteBuilder(int capacity) {
+		buffer = new byte[Math.max(capacity, 16)];
+	}
+
+	public void append(int b) {
+		ensureCapacity(size + 1);
+		buffer[size++] = (byte) b;
+	}
+
+	public void append(byte[] bytes, int offset, int length) {
+		ensureCapacity(size + length);
+		System.arraycopy(bytes, offset, buffer, size, length);
+		size += length;
+	}
+
+	/**
+	 * Appends a non-negative value seven bits at a time, low bits first, with
+	 * the top bit of each byte set when more bytes follow.
+	 */
+	public void appendVarInt(int value) {
+		ensureCapacity(size + 5);
+		while ((value & ~0x7F) != 0) {
+			buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		buffer[size++] = (byte) value;
+	}
+
+	/**
+	 * Appends length bytes copied from distance bytes back in the output. The
+	 * copy may overlap the bytes it's appending, in which case the bytes
+	 * between the start of the copy and the end of the output repeat.
+	 */
+	public void copyBack(int distance, int length) {
+		if (distance <= 0 || distance > size)
+			throw new IllegalArgumentException("copy distance " + distance + " is out of range");
+		ensureCapacity(size + length);
+		int from = size - distance;
+		if (distance >= length) {
+			System.arraycopy(buffer, from, buffer, size, length);
+		} else {
+			// each pass doubles the repeated run, so long runs take few copies.
+			int done = 0;
+			while (done < length) {
+				int chunk = Math.min(distance + done, length - done);
+				System.arraycopy(buffer, from, buffer, size + done, chunk);
+				done += chunk;
+			}
+		}
+		size += length;
+	}
+
+	public int length() {
+		return size;
+	}
+
+	public byte[] toByteArray() {
+		return Arrays.copyOf(buffer, size);
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity > buffer.length)
+			buffer = Arrays.copyOf(buffer, Math.max(capacity, buffer.length * 2));
+	}
+}
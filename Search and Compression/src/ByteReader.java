@@ -0,0 +1,55 @@
+/**
+ * Reads bytes and variable length integers back out of an array written with
+ * a ByteBuilder, keeping track of where it's up to.
+ */
+public class ByteReader {
+	private final byte[] data;
+	private int position;
+
+	public ByteReader(byte[] data) {
+		this(data, 0);
+	}
+
+	public ByteReader(byte[] data, int offset) {
+		this.data = data;
+		this.position = offset;
+	}
+
+	public int read() {
+		if (position >= data.length)
+			throw new IllegalArgumentException("read past the end of the input");
+		return data[position++] & 0xFF;
+	}
+
+	/**
+	 * Reads a value written by ByteBuilder.appendVarInt.
+	 */
+	public int readVarInt() {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			int b = read();
+			value |= (b & 0x7F) << shift;
+			if (b < 0x80)
+				return value;
+		}
+		throw new IllegalArgumentException("malformed variable length integer");
+	}
+
+	/**
+	 * Appends the next length bytes to output.
+	 */
+	public void readInto(ByteBuilder output, int length) {
+		if (length > data.length - position)
+			throw new IllegalArgumentException("read past the end of the input");
+		output.append(data, position, length);
+		position += length;
+	}
+
+	public int position() {
+		return position;
+	}
+
+	public int remaining() {
+		return data.length - position;
+	}
+}
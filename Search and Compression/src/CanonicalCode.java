@@ -0,0 +1,295 @@
+import java.util.Arrays;
+
+/**
+ * A canonical prefix code over the symbols 0 to size - 1. Only the code length
+ * of each symbol is needed to describe the code: shorter codes come first, and
+ * codes of the same length are handed out in symbol order. That makes the code
+ * cheap to store in a header, and lets the decoder work from a few flat arrays
+ * rather than a tree.
+ */
+public class CanonicalCode {
+	/**
+	 * The default limit on code lengths. Anything up to 15 bits lets the
+	 * lengths be stored in four bits each.
+	 */
+	public static final int DEFAULT_MAX_LENGTH = 15;
+
+	// the decoder looks up this many bits at once, or fewer if no code is
+	// that long.
+	private static final int LOOKUP_BITS = 11;
+	private static final int LIMIT = 31;
+
+	private final int[] lengths;
+	private final int[] codes;
+	private final int longest;
+
+	// decoding tables. table holds (symbol << 8 | length) for every code no
+	// longer than lookupBits. longer codes are found through the canonical
+	// layout: the codes of each length are consecutive, starting at
+	// firstCode[length], and their symbols sit in sorted from
+	// firstIndex[length].
+	private final int lookupBits;
+	private final int[] table;
+	private final int[] firstCode;
+	private final int[] firstIndex;
+	private final int[] count;
+	private final int[] sorted;
+
+	/**
+	 * Builds the code from a length for every symbol, where zero means the
+	 * symbol is unused.
+	 */
+	public CanonicalCode(int[] lengths) {
+		this.lengths = lengths.clone();
+		this.codes = new int[lengths.length];
+
+		int longest = 0;
+		count = new int[LIMIT + 1];
+		for (int length : lengths) {
+			if (length < 0 || length > LIMIT)
+				throw new IllegalArgumentException("code length " + length + " is out of range");
+			if (length > 0)
+				count[length]++;
+			longest = Math.max(longest, length);
+		}
+		this.longest = longest;
+
+		// lengths that claim more than the whole code space (the Kraft
+		// inequality) aren't a prefix code, and would overrun the tables.
+		long space = 0;
+		for (int length = 1; length <= LIMIT; length++)
+			space += (long) count[length] << (LIMIT - length);
+		if (space > 1L << LIMIT)
+			throw new IllegalArgumentException("code lengths over-subscribe the code space");
+
+		firstCode = new int[LIMIT + 2];
+		firstIndex = new int[LIMIT + 2];
+		int code = 0;
+		int index = 0;
+		for (int length = 1; length <= LIMIT; length++) {
+			code = (code + count[length - 1]) << 1;
+			firstCode[length] = code;
+			firstIndex[length] = index;
+			index += count[length];
+		}
+
+		sorted = new int[index];
+		int[] next = Arrays.copyOf(firstIndex, firstIndex.length);
+		for (int s = 0; s < lengths.length; s++) {
+			if (lengths[s] > 0) {
+				codes[s] = firstCode[lengths[s]] + next[lengths[s]] - firstIndex[lengths[s]];
+				sorted[next[lengths[s]]++] = s;
+			}
+		}
+
+		lookupBits = Math.max(1, Math.min(LOOKUP_BITS, longest));
+		table = new int[1 << lookupBits];
+		for (int s = 0; s < lengths.length; s++) {
+			int length = lengths[s];
+			if (length > 0 && length <= lookupBits) {
+				int shift = lookupBits - length;
+				int entry = s << 8 | length;
+				for (int i = codes[s] << shift; i < (codes[s] + 1) << shift; i++)
+					table[i] = entry;
+			}
+		}
+	}
+
+	/**
+	 * Builds the best code for the given symbol frequencies whose codes are no
+	 * longer than maxLength bits.
+	 */
+	public static CanonicalCode fromFrequencies(int[] freq, int maxLength) {
+		return new CanonicalCode(codeLengths(freq, maxLength));
+	}
+
+	/**
+	 * Works out optimal code lengths for the given frequencies, subject to no
+	 * code being longer than maxLength, using the package-merge algorithm.
+	 * Symbols with a frequency of zero get a length of zero.
+	 *
+	 * Package-merge treats a code of length L as L coins, one for each level
+	 * of the tree. Each level's list is the symbols' own coins merged, in
+	 * weight order, with pairs ("packages") from the level below it. The
+	 * cheapest 2n - 2 items of the last list make up the code, and a symbol's
+	 * length is the number of those items it appears in.
+	 */
+	public static int[] codeLengths(int[] freq, int maxLength) {
+		if (maxLength < 1 || maxLength > LIMIT)
+			throw new IllegalArgumentException("maximum code length must be between 1 and " + LIMIT);
+		int[] lengths = new int[freq.length];
+
+		// sort the used symbols by frequency, breaking ties on symbol.
+		long[] keys = new long[freq.length];
+		int n = 0;
+		for (int s = 0; s < freq.length; s++) {
+			if (freq[s] > 0)
+				keys[n++] = (long) freq[s] << 32 | s;
+		}
+		if (n == 0)
+			return lengths;
+		if (n == 1) {
+			lengths[(int) keys[0]] = 1;
+			return lengths;
+		}
+		if ((1L << maxLength) < n)
+			throw new IllegalArgumentException(n + " symbols don't fit in codes of " + maxLength + " bits");
+		Arrays.sort(keys, 0, n);
+
+		long[] leafWeight = new long[n];
+		for (int i = 0; i < n; i++)
+			leafWeight[i] = keys[i] >>> 32;
+
+		// item i of level l is a leaf if refs[l][i] < 0, where ~ref is its
+		// index into the sorted leaves, or else the package made from items
+		// 2 * ref and 2 * ref + 1 of level l - 1.
+		long[][] weights = new long[maxLength][];
+		int[][] refs = new int[maxLength][];
+		weights[0] = leafWeight;
+		refs[0] = new int[n];
+		for (int i = 0; i < n; i++)
+			refs[0][i] = ~i;
+
+		for (int level = 1; level < maxLength; level++) {
+			long[] below = weights[level - 1];
+			int packages = below.length / 2;
+			// nothing past the first 2n - 2 items can ever be chosen.
+			int size = Math.min(n + packages, 2 * n - 2);
+			long[] weight = new long[size];
+			int[] ref = new int[size];
+			int leaf = 0;
+			int pack = 0;
+			for (int i = 0; i < size; i++) {
+				long packWeight = pack < packages ? below[2 * pack] + below[2 * pack + 1] : Long.MAX_VALUE;
+				if (leaf < n && leafWeight[leaf] <= packWeight) {
+					weight[i] = leafWeight[leaf];
+					ref[i] = ~leaf++;
+				} else {
+					weight[i] = packWeight;
+					ref[i] = pack++;
+				}
+			}
+			weights[level] = weight;
+			refs[level] = ref;
+		}
+
+		int[] depth = new int[n];
+		for (int i = 0; i < 2 * n - 2; i++)
+			countCoins(refs, maxLength - 1, i, depth);
+		for (int i = 0; i < n; i++)
+			lengths[(int) keys[i]] = depth[i];
+		return lengths;
+	}
+
+	private static void countCoins(int[][] refs, int level, int item, int[] depth) {
+		int ref = refs[level][item];
+		if (ref < 0) {
+			depth[~ref]++;
+		} else {
+			countCoins(refs, level - 1, 2 * ref, depth);
+			countCoins(refs, level - 1, 2 * ref + 1, depth);
+		}
+	}
+
+	public int size() {
+		return lengths.length;
+	}
+
+	public int length(int symbol) {
+		return lengths[symbol];
+	}
+
+	/**
+	 * The length of the longest code, or zero if no symbol is used.
+	 */
+	public int longest() {
+		return longest;
+	}
+
+	public void write(BitWriter out, int symbol) {
+		if (lengths[symbol] == 0)
+			throw new IllegalArgumentException("symbol " + symbol + " has no code");
+		out.writeBits(codes[symbol], lengths[symbol]);
+	}
+
+	public int read(BitReader in) {
+		int entry = table[in.peekBits(lookupBits)];
+		if (entry != 0) {
+			in.skipBits(entry & 0xFF);
+			return entry >>> 8;
+		}
+		// longer than the table covers, so try each longer length in turn.
+		int bits = in.peekBits(longest);
+		for (int length = lookupBits + 1; length <= longest; length++) {
+			int offset = (bits >>> (longest - length)) - firstCode[length];
+			if (offset >= 0 && offset < count[length]) {
+				in.skipBits(length);
+				return sorted[firstIndex[length] + offset];
+			}
+		}
+		throw new IllegalArgumentException("invalid code in input");
+	}
+
+	/**
+	 * Writes the code lengths, which is all readLengths needs to rebuild the
+	 * code. Lengths are either listed for every symbol, or as (symbol, length)
+	 * pairs for just the used ones, whichever is shorter.
+	 */
+	public void writeLengths(BitWriter out) {
+		int width = bitsFor(longest);
+		int symbolBits = bitsFor(lengths.length - 1);
+		int used = lengths.length - count(0);
+		out.writeBits(width, 5);
+		if ((long) used * (symbolBits + width) + symbolBits + 1 < (long) lengths.length * width) {
+			out.writeBit(1);
+			out.writeBits(used, symbolBits + 1);
+			for (int s = 0; s < lengths.length; s++) {
+				if (lengths[s] > 0) {
+					out.writeBits(s, symbolBits);
+					out.writeBits(lengths[s], width);
+				}
+			}
+		} else {
+			out.writeBit(0);
+			for (int length : lengths)
+				out.writeBits(length, width);
+		}
+	}
+
+	/**
+	 * Reads back lengths written by writeLengths for a code over size symbols.
+	 * Lengths that can't be a prefix code, as in a damaged header, throw an
+	 * IllegalArgumentException.
+	 */
+	public static CanonicalCode readLengths(BitReader in, int size) {
+		int[] lengths = new int[size];
+		int width = (int) in.readBits(5);
+		if (in.readBit() == 1) {
+			int symbolBits = bitsFor(size - 1);
+			int used = (int) in.readBits(symbolBits + 1);
+			for (int i = 0; i < used; i++) {
+				int symbol = (int) in.readBits(symbolBits);
+				if (symbol >= size)
+					throw new IllegalArgumentException("symbol " + symbol + " is out of range");
+				lengths[symbol] = (int) in.readBits(width);
+			}
+		} else {
+			for (int s = 0; s < size; s++)
+				lengths[s] = (int) in.readBits(width);
+		}
+		return new CanonicalCode(lengths);
+	}
+
+	private int count(int length) {
+		int total = 0;
+		for (int l : lengths) {
+			if (l == length)
+				total++;
+		}
+		return total;
+	}
+
+	private static int bitsFor(int value) {
+		return 32 - Integer.numberOfLeadingZeros(value);
+	}
+}
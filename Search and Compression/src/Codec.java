@@ -0,0 +1,14 @@
+/**
+ * Turns bytes into compressed bytes and back again. The compressed form must
+ * carry everything decompress needs, so the two calls don't have to share an
+ * instance.
+ *
+ * Implementations are free to keep statistics about the last call for
+ * getInformation, so an instance shouldn't be shared between threads; code
+ * that compresses in parallel takes a Supplier and makes one per task.
+ */
+public interface Codec {
+	byte[] compress(byte[] data);
+
+	byte[] decompress(byte[] compressed);
+}
@@ -0,0 +1,113 @@
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads a stream written by CodecOutputStream, decompressing one block at a
+ * time as it's needed.
+ */
+public class CodecInputStream extends FilterInputStream {
+	private final Codec codec;
+	private byte[] block = new byte[0];
+	private int position;
+	private boolean finished;
+
+	public CodecInputStream(InputStream in, Codec codec) {
+		super(in);
+		this.codec = codec;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (position == block.length && !nextBlock())
+			return -1;
+		return block[position++] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0)
+			return 0;
+		if (position == block.length && !nextBlock())
+			return -1;
+		int take = Math.min(len, block.length - position);
+		System.arraycopy(block, position, b, off, take);
+		position += take;
+		return take;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		long skipped = 0;
+		while (skipped < n && (position < block.length || nextBlock())) {
+			int take = (int) Math.min(n - skipped, block.length - position);
+			position += take;
+			skipped += take;
+		}
+		return skipped;
+	}
+
+	@Override
+	public int available() {
+		return block.length - position;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	@Override
+	public synchronized void mark(int readlimit) {
+	}
+
+	@Override
+	public synchronized void reset() throws IOException {
+		throw new IOException("mark and reset are not supported");
+	}
+
+	/**
+	 * Reads and decompresses the next block, returning false at the end of the
+	 * stream.
+	 */
+	private boolean nextBlock() throws IOException {
+		while (!finished) {
+			int length = readVarInt();
+			if (length == 0) {
+				finished = true;
+				break;
+			}
+			byte[] compressed = new byte[length];
+			int read = 0;
+			while (read < length) {
+				int n = in.read(compressed, read, length - read);
+				if (n < 0)
+					throw new EOFException("compressed stream ends part way through a block");
+				read += n;
+			}
+			try {
+				block = codec.decompress(compressed);
+			} catch (IllegalArgumentException e) {
+				throw new IOException("corrupt block in compressed stream", e);
+			}
+			position = 0;
+			if (block.length > 0)
+				return true;
+		}
+		return false;
+	}
+
+	private int readVarInt() throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			int b = in.read();
+			if (b < 0)
+				throw new EOFException("compressed stream ends without an end marker");
+			value |= (b & 0x7F) << shift;
+			if (b < 0x80)
+				return value;
+		}
+		throw new IOException("malformed block length in compressed stream");
+	}
+}
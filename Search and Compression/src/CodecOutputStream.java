@@ -0,0 +1,109 @@
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Compresses everything written to it with a Codec, a block at a time, so the
+ * memory used depends on the block size rather than on how much is written.
+ * Each block goes out as its compressed length, as a variable length integer,
+ * followed by the compressed bytes. A zero length marks the end of the stream,
+ * and is written by finish or close. CodecInputStream reads it back.
+ */
+public class CodecOutputStream extends FilterOutputStream {
+	public static final int DEFAULT_BLOCK_SIZE = 256 * 1024;
+
+	private final Codec codec;
+	private final byte[] buffer;
+	private int count;
+	private boolean finished;
+
+	public CodecOutputStream(OutputStream out, Codec codec) {
+		this(out, codec, DEFAULT_BLOCK_SIZE);
+	}
+
+	public CodecOutputStream(OutputStream out, Codec codec, int blockSize) {
+		super(out);
+		if (blockSize < 1)
+			throw new IllegalArgumentException("block size must be positive");
+		this.codec = codec;
+		this.buffer = new byte[blockSize];
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if (finished)
+			throw new IOException("stream is finished");
+		if (count == buffer.length)
+			writeBlock();
+		buffer[count++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (finished)
+			throw new IOException("stream is finished");
+		while (len > 0) {
+			if (count == buffer.length)
+				writeBlock();
+			int take = Math.min(len, buffer.length - count);
+			System.arraycopy(b, off, buffer, count, take);
+			count += take;
+			off += take;
+			len -= take;
+		}
+	}
+
+	/**
+	 * Compresses whatever is buffered as a block of its own, then flushes the
+	 * underlying stream. Flushing often means smaller blocks and so worse
+	 * compression. After finish there's nothing buffered, so it only flushes
+	 * the underlying stream, as DeflaterOutputStream does.
+	 */
+	@Override
+	public void flush() throws IOException {
+		if (!finished)
+			writeBlock();
+		out.flush();
+	}
+
+	/**
+	 * Writes out the last block and the end marker without closing the
+	 * underlying stream.
+	 */
+	public void finish() throws IOException {
+		if (finished)
+			return;
+		writeBlock();
+		writeVarInt(0);
+		finished = true;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			finish();
+		} finally {
+			out.close();
+		}
+	}
+
+	private void writeBlock() throws IOException {
+		if (finished)
+			throw new IOException("stream is finished");
+		if (count == 0)
+			return;
+		byte[] compressed = codec.compress(count == buffer.length ? buffer : Arrays.copyOf(buffer, count));
+		writeVarInt(compressed.length);
+		out.write(compressed);
+		count = 0;
+	}
+
+	private void writeVarInt(int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+}
@@ -0,0 +1,405 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+import javax.swing.JTextArea;
+import javax.swing.SwingWorker;
+
+/**
+ * One run of a compression algorithm from the compression tab: the input file
+ * is encoded into the output file and then decoded again to check it, off the
+ * event thread so the GUI stays responsive.
+ *
+ * Progress is the number of input bytes processed over both phases, so it
+ * runs from 0 to 100 once through encoding and decoding together. Streamed
+ * runs count bytes as they're read, and framed runs count each block as it
+ * starts, and both can be cancelled between any two blocks. Whole runs hand
+ * the input to the codec at once, so they only move on, and notice a cancel,
+ * between phases; a large input is better run framed. A cancelled job
+ * deletes its output file, which would otherwise be incomplete, before it
+ * finishes, so by the time done() reports it the worker has stopped and the
+ * file is gone. That's why cancelling goes through requestCancel rather than
+ * the SwingWorker's own cancel, which would finish the job straight away
+ * while the worker carried on.
+ *
+ * Output lines are published as they're ready and appended to the output
+ * area on the event thread, including the time and MB/s of each phase. The
+ * current phase is fired as the "phase" property.
+ */
+public class CompressionJob extends SwingWorker<Void, String> {
+	private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+	private final String algorithm;
+	private final int level;
+	private final File input;
+	private final File output;
+	private final boolean framed;
+	private final boolean streamed;
+	private final JTextArea log;
+
+	private long total;
+	private long processed;
+	private String phase = "";
+
+	// set on the event thread to ask the worker to stop, and by the worker
+	// once it has.
+	private volatile boolean cancelRequested;
+	private boolean stopped;
+
+	/**
+	 * @param level
+	 *            the LempelZiv level, for algorithms that use it.
+	 */
+	public CompressionJob(String algorithm, int level, File input, File output, boolean framed, boolean streamed,
+			JTextArea log) {
+		this.algorithm = algorithm;
+		this.level = level;
+		this.input = input;
+		this.output = output;
+		this.framed = framed;
+		this.streamed = streamed;
+		this.log = log;
+	}
+
+	@Override
+	protected Void doInBackground() throws IOException {
+		total = 2 * input.length();
+		try {
+			if (streamed)
+				runStreamed();
+			else if (framed)
+				runFramed();
+			else
+				runWhole();
+		} catch (InterruptedIOException | CancellationException e) {
+			if (!cancelRequested)
+				throw e;
+			// the output of a cancelled job may be incomplete.
+			output.delete();
+			stopped = true;
+		}
+		return null;
+	}
+
+	/**
+	 * Asks the job to stop at the next point it checks. done() runs once it
+	 * actually has.
+	 */
+	public void requestCancel() {
+		cancelRequested = true;
+	}
+
+	@Override
+	protected void process(List<String> lines) {
+		for (String line : lines)
+			log.append(line);
+	}
+
+	@Override
+	protected void done() {
+		try {
+			get();
+			if (stopped) {
+				log.append("\ncancelled, " + output.getName() + " deleted\n");
+				startPhase("cancelled");
+			} else {
+				startPhase("done");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			e.getCause().printStackTrace();
+			log.append("\nfailed: " + e.getCause() + "\n");
+			startPhase("failed");
+		}
+	}
+
+	private void runStreamed() throws IOException {
+		// compress straight from one file to the other, a block at a time,
+		// so the file never has to fit in memory.
+		startPhase("encoding");
+		long start = System.nanoTime();
+		try (InputStream in = counting(new FileInputStream(input));
+				OutputStream out = new CodecOutputStream(new BufferedOutputStream(new FileOutputStream(output)),
+						Assignment5.codecFor(algorithm, level).get())) {
+			copy(in, out);
+		}
+		long encodeTime = System.nanoTime() - start;
+
+		// then check it by reading the two back side by side, a buffer at a
+		// time. only the reads from the decoder are timed, not the check.
+		startPhase("decoding");
+		long decodeTime = 0;
+		boolean match = true;
+		try (InputStream original = new BufferedInputStream(new FileInputStream(input));
+				InputStream decoded = new CodecInputStream(new BufferedInputStream(new FileInputStream(output)),
+						Assignment5.codecFor(algorithm, level).get())) {
+			byte[] buffer = new byte[COPY_BUFFER_SIZE];
+			byte[] expected = new byte[COPY_BUFFER_SIZE];
+			int n;
+			do {
+				start = System.nanoTime();
+				n = decoded.read(buffer);
+				decodeTime += System.nanoTime() - start;
+				if (n < 0) {
+					match &= original.read() < 0;
+				} else {
+					match &= readFully(original, expected, n) == n && Arrays.equals(buffer, 0, n, expected, 0, n);
+					advance(n);
+				}
+			} while (n >= 0);
+		}
+
+		summary(input.length(), output.length(), match);
+		publish("streamed in blocks of " + CodecOutputStream.DEFAULT_BLOCK_SIZE + " bytes\n");
+		timings(input.length(), encodeTime, decodeTime);
+	}
+
+	private void runFramed() throws IOException {
+		byte[] data = Files.readAllBytes(input.toPath());
+
+		// run the chosen algorithm over independent blocks, moving the
+		// progress on, and checking for a cancel, as each one starts.
+		FramedCodec codec = new FramedCodec(Assignment5.codecFor(algorithm, level), FramedCodec.DEFAULT_BLOCK_SIZE);
+		codec.setBlockListener(length -> {
+			if (cancelRequested)
+				throw new CancellationException("cancelled");
+			progress(length);
+		});
+		startPhase("encoding");
+		long start = System.nanoTime();
+		byte[] compressed = codec.compress(data);
+		long encodeTime = System.nanoTime() - start;
+		Files.write(output.toPath(), compressed);
+
+		startPhase("decoding");
+		start = System.nanoTime();
+		byte[] decompressed = codec.decompress(compressed);
+		long decodeTime = System.nanoTime() - start;
+
+		summary(data.length, compressed.length, Arrays.equals(data, decompressed));
+		publish(codec.getInformation());
+		timings(data.length, encodeTime, decodeTime);
+	}
+
+	private void runWhole() throws IOException {
+		// map the file rather than reading it in; codecs that only take
+		// arrays copy it out themselves.
+		MappedByteBuffer data = MappedText.map(input);
+		long length = data.limit();
+		WholeCodec codec = wholeCodec();
+
+		startPhase("encoding");
+		long start = System.nanoTime();
+		byte[] compressed = codec.encode(data);
+		long encodeTime = System.nanoTime() - start;
+		Files.write(output.toPath(), compressed);
+		advance(length);
+
+		startPhase("decoding");
+		start = System.nanoTime();
+		byte[] decoded = codec.decode(compressed);
+		long decodeTime = System.nanoTime() - start;
+		advance(length);
+
+		summary(length, compressed.length, MappedText.contentEquals(data, decoded));
+		publish(codec.getInformation());
+		timings(length, encodeTime, decodeTime);
+	}
+
+	/**
+	 * An algorithm as runWhole runs it, on the whole input at once.
+	 */
+	private interface WholeCodec {
+		byte[] encode(ByteBuffer data);
+
+		byte[] decode(byte[] encoded);
+
+		String getInformation();
+	}
+
+	/**
+	 * The algorithm for runWhole. Huffman, rANS and Lempel Ziv read the
+	 * buffer in place; everything else goes through a Codec on a copy.
+	 */
+	private WholeCodec wholeCodec() {
+		if (algorithm.equals("Huffman coding")) {
+			return new WholeCodec() {
+				private HuffmanCoding huffman;
+
+				public byte[] encode(ByteBuffer data) {
+					huffman = new HuffmanCoding(data);
+					return huffman.encode(data);
+				}
+
+				public byte[] decode(byte[] encoded) {
+					return huffman.decode(encoded);
+				}
+
+				public String getInformation() {
+					return huffman.getInformation();
+				}
+			};
+		} else if (algorithm.equals("rANS coding")) {
+			return new WholeCodec() {
+				private RansCoding rans;
+
+				public byte[] encode(ByteBuffer data) {
+					rans = new RansCoding(data);
+					return rans.encode(data);
+				}
+
+				public byte[] decode(byte[] encoded) {
+					return rans.decode(encoded);
+				}
+
+				public String getInformation() {
+					return rans.getInformation();
+				}
+			};
+		} else if (algorithm.equals("Lempel Ziv")) {
+			LempelZiv lz = new LempelZiv(LempelZiv.DEFAULT_WINDOW_SIZE, level);
+			return new WholeCodec() {
+				public byte[] encode(ByteBuffer data) {
+					return lz.compress(data);
+				}
+
+				public byte[] decode(byte[] encoded) {
+					return lz.decompress(encoded);
+				}
+
+				public String getInformation() {
+					return lz.getInformation();
+				}
+			};
+		}
+		Codec codec = Assignment5.codecFor(algorithm, level).get();
+		return new WholeCodec() {
+			public byte[] encode(ByteBuffer data) {
+				byte[] bytes = new byte[data.limit()];
+				data.duplicate().get(bytes);
+				return codec.compress(bytes);
+			}
+
+			public byte[] decode(byte[] encoded) {
+				return codec.decompress(encoded);
+			}
+
+			public String getInformation() {
+				return information(codec);
+			}
+		};
+	}
+
+	private static String information(Codec codec) {
+		if (codec instanceof LempelZivHuffman)
+			return ((LempelZivHuffman) codec).getInformation();
+		if (codec instanceof BurrowsWheeler)
+			return ((BurrowsWheeler) codec).getInformation();
+		if (codec instanceof OrderOneHuffman)
+			return ((OrderOneHuffman) codec).getInformation();
+		if (codec instanceof LZW)
+			return ((LZW) codec).getInformation();
+		return "";
+	}
+
+	private void summary(long inputLength, long outputLength, boolean match) {
+		publish("input length:  " + inputLength + " bytes \n");
+		publish("output length: " + outputLength + " bytes \n");
+		publish("\noriginal and decoded texts " + (match ? "" : "DO NOT ") + "match!\n");
+	}
+
+	private void timings(long length, long encodeTime, long decodeTime) {
+		publish(String.format("encode: %d ms, %.1f MB/s\n", encodeTime / 1000000, rate(length, encodeTime)));
+		publish(String.format("decode: %d ms, %.1f MB/s\n", decodeTime / 1000000, rate(length, decodeTime)));
+	}
+
+	private static double rate(long bytes, long nanos) {
+		return nanos == 0 ? 0 : bytes / (nanos / 1e9) / (1 << 20);
+	}
+
+	private void startPhase(String next) {
+		String previous = phase;
+		phase = next;
+		firePropertyChange("phase", previous, next);
+	}
+
+	/**
+	 * Counts bytes as processed, and gives up if the job has been asked to
+	 * stop.
+	 */
+	private void advance(long bytes) throws InterruptedIOException {
+		if (cancelRequested)
+			throw new InterruptedIOException("cancelled");
+		progress(bytes);
+	}
+
+	/**
+	 * Counts bytes as processed. Framed blocks report from the pool's
+	 * threads, hence the lock.
+	 */
+	private synchronized void progress(long bytes) {
+		processed += bytes;
+		setProgress((int) Math.min(100, processed * 100 / Math.max(total, 1)));
+	}
+
+	/**
+	 * Wraps a stream of the input file so every byte read from it counts
+	 * towards progress.
+	 */
+	private InputStream counting(InputStream in) {
+		return new FilterInputStream(new BufferedInputStream(in)) {
+			@Override
+			public int read() throws IOException {
+				int b = super.read();
+				if (b >= 0)
+					advance(1);
+				return b;
+			}
+
+			@Override
+			public int read(byte[] buffer, int offset, int length) throws IOException {
+				int n = super.read(buffer, offset, length);
+				if (n > 0)
+					advance(n);
+				return n;
+			}
+		};
+	}
+
+	private static void copy(InputStream in, OutputStream out) throws IOException {
+		byte[] buffer = new byte[COPY_BUFFER_SIZE];
+		int n;
+		while ((n = in.read(buffer)) >= 0)
+			out.write(buffer, 0, n);
+	}
+
+	/**
+	 * Reads up to n bytes into buffer, stopping early only at the end of the
+	 * stream, and returns how many were read.
+	 */
+	private static int readFully(InputStream in, byte[] buffer, int n) throws IOException {
+		int read = 0;
+		while (read < n) {
+			int got = in.read(buffer, read, n - read);
+			if (got < 0)
+				break;
+			read += got;
+		}
+		return read;
+	}
+}
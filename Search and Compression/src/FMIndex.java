@@ -0,0 +1,219 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * An FM-index: a full-text index made from the Burrows-Wheeler transform of a
+ * text rather than from the text itself. Counting a pattern is a backward
+ * search, narrowing the range of sorted rotations that start with a longer and
+ * longer suffix of the pattern, one char at a time from the end, using only
+ * the last column and how often each byte occurs in its prefixes. Locating
+ * walks each row of that range back through the text to the nearest sampled
+ * position.
+ *
+ * The index is over bytes. The String methods search for the UTF-8 encoding
+ * of the pattern, and their positions are byte offsets into the UTF-8 text;
+ * MappedText.charIndices turns them into char indices.
+ *
+ * Beyond the last column, the index keeps the counts of every byte at the
+ * start of each block of BLOCK rows, over only the bytes that occur, and the
+ * text position of every row whose position is a multiple of SAMPLE. For
+ * War and Peace that comes to about 4 bytes per byte of text, half what a
+ * SuffixArray takes. It can be made from the output of BurrowsWheeler without
+ * undoing the transform.
+ */
+public class FMIndex implements TextIndex {
+	private static final int R = 256;
+	private static final int BLOCK_BITS = 7;
+	private static final int SAMPLE = 32;
+
+	private final byte[] last;
+	private final int primary;
+
+	// first[c] is the first row starting with byte c, column[c] is c's column
+	// in occ, or -1 if c never occurs, and occ[b * sigma + column[c]] is how
+	// often c occurs in the last column before row b << BLOCK_BITS, not
+	// counting the primary row.
+	private final int[] first;
+	private final int[] column;
+	private final int sigma;
+	private final int[] occ;
+
+	// sampled has a bit set for every row whose text position is sampled,
+	// sampledBefore[w] counts the set bits in the words before w, and
+	// positions holds the sampled positions in row order.
+	private final long[] sampled;
+	private final int[] sampledBefore;
+	private final int[] positions;
+
+	public FMIndex(String text) {
+		this(text.getBytes(StandardCharsets.UTF_8));
+	}
+
+	public FMIndex(byte[] data) {
+		this(BurrowsWheeler.transform(data));
+	}
+
+	/**
+	 * Builds the index straight from the output of BurrowsWheeler, decoding
+	 * the transform but not inverting it.
+	 */
+	public static FMIndex fromCompressed(byte[] compressed) {
+		return new FMIndex(BurrowsWheeler.decodeTransform(compressed));
+	}
+
+	private FMIndex(BurrowsWheeler.Transform transform) {
+		last = transform.last;
+		primary = transform.primary;
+		int rows = last.length;
+
+		int[] counts = new int[R];
+		for (int r = 0; r < rows; r++) {
+			if (r != primary)
+				counts[last[r] & 0xFF]++;
+		}
+		first = new int[R];
+		column = new int[R];
+		int used = 0;
+		for (int c = 0, sum = 1; c < R; c++) {
+			first[c] = sum;
+			sum += counts[c];
+			column[c] = counts[c] > 0 ? used++ : -1;
+		}
+		sigma = used;
+
+		int blocks = (rows >>> BLOCK_BITS) + 1;
+		occ = new int[blocks * sigma];
+		int[] running = new int[R];
+		// row == rows is included, as rank is asked about the end too.
+		for (int r = 0; r <= rows; r++) {
+			if ((r & ((1 << BLOCK_BITS) - 1)) == 0) {
+				int base = (r >>> BLOCK_BITS) * sigma;
+				for (int c = 0; c < R; c++) {
+					if (column[c] >= 0)
+						occ[base + column[c]] = running[c];
+				}
+			}
+			if (r < rows && r != primary)
+				running[last[r] & 0xFF]++;
+		}
+
+		// walk the text backwards from the end marker's row, once to mark
+		// the sampled rows and once to record their positions.
+		int[] previous = new int[rows];
+		int[] seen = new int[R];
+		for (int r = 0; r < rows; r++) {
+			if (r != primary) {
+				int c = last[r] & 0xFF;
+				previous[r] = first[c] + seen[c]++;
+			}
+		}
+		sampled = new long[(rows + 63) >>> 6];
+		int row = 0;
+		for (int position = rows - 2; position >= 0; position--) {
+			row = previous[row];
+			if (position % SAMPLE == 0)
+				sampled[row >>> 6] |= 1L << row;
+		}
+		sampledBefore = new int[sampled.length + 1];
+		for (int w = 0; w < sampled.length; w++)
+			sampledBefore[w + 1] = sampledBefore[w] + Long.bitCount(sampled[w]);
+		positions = new int[sampledBefore[sampled.length]];
+		row = 0;
+		for (int position = rows - 2; position >= 0; position--) {
+			row = previous[row];
+			if (position % SAMPLE == 0)
+				positions[sampledRank(row)] = position;
+		}
+	}
+
+	/**
+	 * The length of the indexed text in bytes.
+	 */
+	public int length() {
+		return last.length - 1;
+	}
+
+	@Override
+	public int count(String pattern) {
+		return count(pattern.getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Override
+	public int[] locate(String pattern) {
+		return locate(pattern.getBytes(StandardCharsets.UTF_8));
+	}
+
+	public int count(byte[] pattern) {
+		int[] range = range(pattern);
+		return range[1] - range[0];
+	}
+
+	/**
+	 * The offset of every occurrence of pattern in the text, in increasing
+	 * order.
+	 */
+	public int[] locate(byte[] pattern) {
+		int[] range = range(pattern);
+		int[] found = new int[range[1] - range[0]];
+		for (int r = range[0]; r < range[1]; r++)
+			found[r - range[0]] = position(r);
+		Arrays.sort(found);
+		return found;
+	}
+
+	/**
+	 * Backward search: the rows whose rotations start with pattern, as
+	 * { from, to }.
+	 */
+	private int[] range(byte[] pattern) {
+		if (pattern.length == 0)
+			return new int[] { 0, 0 };
+		int lo = 0;
+		int hi = last.length;
+		for (int i = pattern.length - 1; i >= 0 && lo < hi; i--) {
+			int c = pattern[i] & 0xFF;
+			if (column[c] < 0)
+				return new int[] { 0, 0 };
+			lo = first[c] + rank(c, lo);
+			hi = first[c] + rank(c, hi);
+		}
+		return lo < hi ? new int[] { lo, hi } : new int[] { 0, 0 };
+	}
+
+	/**
+	 * How often byte c occurs in the last column before row, not counting
+	 * the primary row.
+	 */
+	private int rank(int c, int row) {
+		int block = row >>> BLOCK_BITS;
+		int count = occ[block * sigma + column[c]];
+		byte b = (byte) c;
+		int from = block << BLOCK_BITS;
+		for (int r = from; r < row; r++) {
+			if (last[r] == b)
+				count++;
+		}
+		if (from <= primary && primary < row && last[primary] == b)
+			count--;
+		return count;
+	}
+
+	/**
+	 * The text position of a row, found by stepping back through the text
+	 * until a sampled row turns up.
+	 */
+	private int position(int row) {
+		int steps = 0;
+		while ((sampled[row >>> 6] & 1L << row) == 0) {
+			int c = last[row] & 0xFF;
+			row = first[c] + rank(c, row);
+			steps++;
+		}
+		return positions[sampledRank(row)] + steps;
+	}
+
+	private int sampledRank(int row) {
+		int word = row >>> 6;
+		return sampledBefore[word] + Long.bitCount(sampled[word] & ((1L << row) - 1));
+	}
+}
@@ -0,0 +1,120 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Substring search that filters on the first and last chars of the pattern
+ * before comparing anything else. A window of the text can only match if it
+ * starts with the pattern's first char and ends with its last, and the two
+ * tests together rule out nearly every window, even over a small alphabet like
+ * the digits of pi.txt, where KMP gets little help from the pattern.
+ *
+ * Over bytes the filter looks at eight windows at once, SWAR style: it reads
+ * eight bytes from the start of the windows and eight from their ends as two
+ * longs, XORs each with the wanted byte repeated eight times, and finds the
+ * zero bytes of their OR with the usual carry trick. Only the windows flagged
+ * are compared in full. The trick can flag a byte just above a real zero,
+ * which the comparison then rejects, but it never misses one.
+ */
+public class FirstLastFilter implements SubstringSearch {
+	private static final long ONES = 0x0101010101010101L;
+	private static final long HIGHS = 0x8080808080808080L;
+
+	private final String search;
+
+	public FirstLastFilter(String pattern) {
+		this.search = pattern;
+	}
+
+	@Override
+	public String pattern() {
+		return search;
+	}
+
+	@Override
+	public int search(CharSequence text, int from, int to) {
+		int m = search.length();
+		if (m == 0)
+			return from <= to ? from : -1;
+
+		char first = search.charAt(0);
+		char last = search.charAt(m - 1);
+		for (int t = from; t + m <= to; t++) {
+			if (text.charAt(t) == first && text.charAt(t + m - 1) == last && matchesAt(text, t))
+				return t;
+		}
+		return -1;
+	}
+
+	private boolean matchesAt(CharSequence text, int t) {
+		for (int s = 1; s < search.length() - 1; s++) {
+			if (search.charAt(s) != text.charAt(t + s))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the offset of the first match of pattern in a buffer at or
+	 * after from, or -1. The buffer is read by absolute index.
+	 */
+	public static int search(ByteBuffer text, byte[] pattern, int from) {
+		if (pattern.length == 0)
+			return from <= text.limit() ? from : -1;
+		return scan(littleEndian(text), pattern, from);
+	}
+
+	/**
+	 * Returns the offset of every match of pattern in a buffer, in order.
+	 */
+	public static int[] searchAll(ByteBuffer text, byte[] pattern) {
+		if (pattern.length == 0)
+			return new int[0];
+		ByteBuffer words = littleEndian(text);
+		int[] found = new int[16];
+		int count = 0;
+		for (int t = scan(words, pattern, 0); t >= 0; t = scan(words, pattern, t + 1)) {
+			if (count == found.length)
+				found = Arrays.copyOf(found, count * 2);
+			found[count++] = t;
+		}
+		return Arrays.copyOf(found, count);
+	}
+
+	// so that the first of eight windows is the low byte of each long.
+	private static ByteBuffer littleEndian(ByteBuffer text) {
+		return text.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	private static int scan(ByteBuffer text, byte[] pattern, int from) {
+		int m = pattern.length;
+		int limit = text.limit();
+		long first = (pattern[0] & 0xFFL) * ONES;
+		long last = (pattern[m - 1] & 0xFFL) * ONES;
+
+		int t = from;
+		for (; t + m - 1 + 8 <= limit; t += 8) {
+			long x = text.getLong(t) ^ first | text.getLong(t + m - 1) ^ last;
+			long candidates = (x - ONES) & ~x & HIGHS;
+			while (candidates != 0) {
+				int window = t + (Long.numberOfTrailingZeros(candidates) >>> 3);
+				if (matchesAt(text, pattern, window))
+					return window;
+				candidates &= candidates - 1;
+			}
+		}
+		for (; t + m <= limit; t++) {
+			if (matchesAt(text, pattern, t))
+				return t;
+		}
+		return -1;
+	}
+
+	private static boolean matchesAt(ByteBuffer text, byte[] pattern, int t) {
+		for (int s = 0; s < pattern.length; s++) {
+			if (text.get(t + s) != pattern[s])
+				return false;
+		}
+		return true;
+	}
+}
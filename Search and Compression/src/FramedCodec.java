@@ -0,0 +1,195 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Splits the input into fixed size blocks and compresses each one on its own
+ * with another codec, spreading the blocks over a fork-join pool. Because the
+ * blocks are independent they can also be decompressed in parallel, or one at
+ * a time with decompressBlock. A block listener hears about each block as it
+ * starts, to show progress or to stop the rest.
+ *
+ * The output starts with a frame index: the block size, the original length,
+ * the number of blocks and the compressed size of every block, all as
+ * variable length integers. The compressed blocks follow in order.
+ */
+public class FramedCodec implements Codec {
+	public static final int DEFAULT_BLOCK_SIZE = 256 * 1024;
+
+	private final Supplier<? extends Codec> codecs;
+	private final int blockSize;
+	private final ForkJoinPool pool;
+
+	private int blocks;
+	private IntConsumer blockListener = length -> {
+	};
+
+	/**
+	 * @param codecs
+	 *            makes a codec for each block, as codecs aren't shared between
+	 *            threads.
+	 */
+	public FramedCodec(Supplier<? extends Codec> codecs, int blockSize) {
+		this(codecs, blockSize, ForkJoinPool.commonPool());
+	}
+
+	public FramedCodec(Supplier<? extends Codec> codecs, int blockSize, ForkJoinPool pool) {
+		if (blockSize < 1)
+			throw new IllegalArgumentException("block size must be positive");
+		this.codecs = codecs;
+		this.blockSize = blockSize;
+		this.pool = pool;
+	}
+
+	/**
+	 * Has listener told the original length of every block just before it's
+	 * compressed or decompressed, on whichever thread runs the block. Throwing
+	 * an unchecked exception from it stops the blocks that haven't started,
+	 * and compress or decompress throws it once the running ones finish.
+	 */
+	public void setBlockListener(IntConsumer listener) {
+		this.blockListener = listener;
+	}
+
+	@Override
+	public byte[] compress(byte[] data) {
+		blocks = (data.length + blockSize - 1) / blockSize;
+		IntConsumer listener = blockListener;
+		List<Callable<byte[]>> jobs = new ArrayList<>();
+		for (int i = 0; i < blocks; i++) {
+			int from = i * blockSize;
+			int to = Math.min(from + blockSize, data.length);
+			jobs.add(() -> {
+				listener.accept(to - from);
+				return codecs.get().compress(Arrays.copyOfRange(data, from, to));
+			});
+		}
+		List<byte[]> compressed = runAll(jobs);
+
+		ByteBuilder output = new ByteBuilder();
+		output.appendVarInt(blockSize);
+		output.appendVarInt(data.length);
+		output.appendVarInt(blocks);
+		for (byte[] block : compressed)
+			output.appendVarInt(block.length);
+		for (byte[] block : compressed)
+			output.append(block, 0, block.length);
+		return output.toByteArray();
+	}
+
+	@Override
+	public byte[] decompress(byte[] compressed) {
+		Frame frame = new Frame(compressed);
+		blocks = frame.sizes.length;
+		IntConsumer listener = blockListener;
+		List<Callable<byte[]>> jobs = new ArrayList<>();
+		for (int i = 0; i < blocks; i++) {
+			int index = i;
+			jobs.add(() -> {
+				listener.accept(frame.blockLength(index));
+				return frame.decompress(codecs.get(), index);
+			});
+		}
+		List<byte[]> decompressed = runAll(jobs);
+
+		byte[] output = new byte[frame.length];
+		int position = 0;
+		for (byte[] block : decompressed) {
+			if (position + block.length > output.length)
+				throw new IllegalArgumentException("blocks decode to more than the frame length");
+			System.arraycopy(block, 0, output, position, block.length);
+			position += block.length;
+		}
+		if (position != output.length)
+			throw new IllegalArgumentException("blocks decode to less than the frame length");
+		return output;
+	}
+
+	/**
+	 * Decompresses just one block of compressed output, without touching any
+	 * of the others. Block i holds bytes [i * blockSize, (i + 1) * blockSize)
+	 * of the original.
+	 */
+	public byte[] decompressBlock(byte[] compressed, int index) {
+		return new Frame(compressed).decompress(codecs.get(), index);
+	}
+
+	/**
+	 * The number of blocks in compressed output.
+	 */
+	public static int blockCount(byte[] compressed) {
+		return new Frame(compressed).sizes.length;
+	}
+
+	public String getInformation() {
+		return "blocks: " + blocks + " of " + blockSize + " bytes on " + pool.getParallelism() + " workers\n";
+	}
+
+	private <T> List<T> runAll(List<Callable<T>> jobs) {
+		List<T> results = new ArrayList<>();
+		try {
+			for (Future<T> future : pool.invokeAll(jobs))
+				results.add(future.get());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted while running blocks", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new IllegalStateException(e.getCause());
+		}
+		return results;
+	}
+
+	/**
+	 * The frame index at the start of some compressed output, with the offset
+	 * of every block worked out.
+	 */
+	private static class Frame {
+		final byte[] data;
+		final int blockSize;
+		final int length;
+		final int[] sizes;
+		final int[] offsets;
+
+		Frame(byte[] data) {
+			this.data = data;
+			ByteReader in = new ByteReader(data);
+			blockSize = in.readVarInt();
+			length = in.readVarInt();
+			int count = in.readVarInt();
+			if (count > in.remaining())
+				throw new IllegalArgumentException("frame index is corrupt");
+			sizes = new int[count];
+			offsets = new int[count];
+			for (int i = 0; i < count; i++)
+				sizes[i] = in.readVarInt();
+			int offset = in.position();
+			for (int i = 0; i < count; i++) {
+				offsets[i] = offset;
+				offset += sizes[i];
+			}
+			if (offset > data.length)
+				throw new IllegalArgumentException("frame is truncated");
+		}
+
+		/**
+		 * How many bytes of the original block index should decode to.
+		 */
+		int blockLength(int index) {
+			return (int) Math.max(0, Math.min(blockSize, length - (long) index * blockSize));
+		}
+
+		byte[] decompress(Codec codec, int index) {
+			if (index < 0 || index >= sizes.length)
+				throw new IndexOutOfBoundsException("block " + index + " of " + sizes.length);
+			return codec.decompress(Arrays.copyOfRange(data, offsets[index], offsets[index] + sizes[index]));
+		}
+	}
+}
@@ -0,0 +1,36 @@
+import java.util.Arrays;
+
+/**
+ * Collects the ends of approximate matches as a search reports them, keeping
+ * only the best of each run of ends no more than span apart.
+ */
+final class FuzzyMatches {
+	private final int span;
+	private int[] ends = new int[16];
+	private int count;
+	private int lastEnd;
+	private int best;
+
+	FuzzyMatches(int span) {
+		this.span = Math.max(1, span);
+	}
+
+	void add(int end, int distance) {
+		if (count > 0 && end - lastEnd <= span) {
+			if (distance < best) {
+				ends[count - 1] = end;
+				best = distance;
+			}
+		} else {
+			if (count == ends.length)
+				ends = Arrays.copyOf(ends, count * 2);
+			ends[count++] = end;
+			best = distance;
+		}
+		lastEnd = end;
+	}
+
+	int[] toArray() {
+		return Arrays.copyOf(ends, count);
+	}
+}
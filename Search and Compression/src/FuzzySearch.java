@@ -0,0 +1,44 @@
+/**
+ * A pattern compiled for approximate search: finding the places where the text
+ * is within k edits of the pattern, an edit being a char inserted, deleted or
+ * changed.
+ *
+ * An approximate match has a definite end but not a definite start, as the
+ * edits can be at either end, so matches are reported by where they end. Where
+ * several ends in a row all match, as they do around every exact match once k
+ * is at least one, only the one with the fewest edits is reported. Ends a few
+ * chars apart can be treated as a run too, by passing a wider span.
+ */
+public interface FuzzySearch {
+	String pattern();
+
+	/**
+	 * Returns the end (exclusive) of every match of the pattern within k
+	 * edits, in order, one per run of consecutive ends.
+	 */
+	default int[] searchAll(CharSequence text, int k) {
+		return searchRuns(text, k, 1);
+	}
+
+	/**
+	 * Returns the end of every match within k edits, one per run of ends
+	 * where each is no more than span past the one before. A span of the
+	 * pattern's length counts matches that would overlap as one.
+	 */
+	int[] searchRuns(CharSequence text, int k, int span);
+
+	/**
+	 * Numbers the chars of pattern from 1 up, giving every char that isn't in
+	 * the pattern class 0. Bit-parallel searches keep one mask per class
+	 * rather than one per char.
+	 */
+	static int[] charClasses(String pattern) {
+		int[] classes = new int[Character.MAX_VALUE + 1];
+		int next = 1;
+		for (int i = 0; i < pattern.length(); i++) {
+			if (classes[pattern.charAt(i)] == 0)
+				classes[pattern.charAt(i)] = next++;
+		}
+		return classes;
+	}
+}
@@ -0,0 +1,87 @@
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Counts how often each byte value occurs, either in a single pass or split
+ * into chunks across the common fork-join pool. In the parallel version each
+ * worker counts its chunk into its own array and the arrays are added together
+ * as the tasks join, so the workers never share a counter.
+ */
+public class Histogram {
+	public static final int R = 256;
+
+	// a chunk this size or smaller is counted by one worker.
+	private static final int CHUNK = 1 << 18;
+
+	public static int[] count(byte[] data) {
+		return count(data, 0, data.length);
+	}
+
+	/**
+	 * Counts the bytes in data[from, to).
+	 */
+	public static int[] count(byte[] data, int from, int to) {
+		int[] counts = new int[R];
+		for (int i = from; i < to; i++)
+			counts[data[i] & 0xFF]++;
+		return counts;
+	}
+
+	/**
+	 * Counts the bytes of a buffer, such as a mapped file, without copying
+	 * them out. Reads are by absolute index, so the buffer's position is left
+	 * alone.
+	 */
+	public static int[] count(ByteBuffer data, int from, int to) {
+		if (data.hasArray())
+			return count(data.array(), data.arrayOffset() + from, data.arrayOffset() + to);
+		int[] counts = new int[R];
+		for (int i = from; i < to; i++)
+			counts[data.get(i) & 0xFF]++;
+		return counts;
+	}
+
+	public static int[] countParallel(byte[] data) {
+		return ForkJoinPool.commonPool().invoke(new CountTask(ByteBuffer.wrap(data), 0, data.length));
+	}
+
+	public static int[] countParallel(ByteBuffer data) {
+		return ForkJoinPool.commonPool().invoke(new CountTask(data, 0, data.limit()));
+	}
+
+	/**
+	 * The number of workers countParallel can use.
+	 */
+	public static int parallelism() {
+		return ForkJoinPool.commonPool().getParallelism();
+	}
+
+	private static class CountTask extends RecursiveTask<int[]> {
+		private static final long serialVersionUID = 1L;
+
+		private final ByteBuffer data;
+		private final int from;
+		private final int to;
+
+		CountTask(ByteBuffer data, int from, int to) {
+			this.data = data;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected int[] compute() {
+			if (to - from <= CHUNK)
+				return count(data, from, to);
+			int middle = (from + to) >>> 1;
+			CountTask left = new CountTask(data, from, middle);
+			left.fork();
+			int[] counts = new CountTask(data, middle, to).compute();
+			int[] other = left.join();
+			for (int i = 0; i < R; i++)
+				counts[i] += other[i];
+			return counts;
+		}
+	}
+}
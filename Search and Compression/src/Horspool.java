@@ -0,0 +1,57 @@
+import java.util.Arrays;
+
+/**
+ * Boyer-Moore-Horspool search. Each window of the text is checked from its
+ * last char, and whatever that char is decides how far the window can move:
+ * past it entirely if it isn't in the pattern, or far enough to line it up
+ * with its last occurrence in the pattern otherwise. On English text most
+ * windows are rejected by one comparison and skip most of a pattern length.
+ *
+ * The shift table is indexed by the low byte of each char. Chars that share a
+ * low byte share a slot, which holds the smallest of their shifts, so the
+ * table stays small for any alphabet and a shift is never too long.
+ */
+public class Horspool implements SubstringSearch {
+	private static final int SLOTS = 256;
+
+	private final String search;
+	private final int[] shift;
+
+	public Horspool(String pattern) {
+		this.search = pattern;
+
+		int m = pattern.length();
+		shift = new int[SLOTS];
+		Arrays.fill(shift, Math.max(m, 1));
+		// later positions overwrite earlier ones, leaving the smallest shift.
+		for (int i = 0; i < m - 1; i++)
+			shift[pattern.charAt(i) & (SLOTS - 1)] = m - 1 - i;
+	}
+
+	@Override
+	public String pattern() {
+		return search;
+	}
+
+	@Override
+	public int search(CharSequence text, int from, int to) {
+		int m = search.length();
+		if (m == 0)
+			return from <= to ? from : -1;
+
+		char last = search.charAt(m - 1);
+		int t = from;
+		while (t + m <= to) {
+			char c = text.charAt(t + m - 1);
+			if (c == last) {
+				int s = m - 2;
+				while (s >= 0 && search.charAt(s) == text.charAt(t + s))
+					s--;
+				if (s < 0)
+					return t;
+			}
+			t += shift[c & (SLOTS - 1)];
+		}
+		return -1;
+	}
+}
@@ -1,55 +1,108 @@
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Map.Entry;
-import java.util.PriorityQueue;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 
 /**
  * A new instance of HuffmanCoding is created for every run. The constructor is
  * passed the full text to be encoded or decoded, so this is a good place to
  * construct the tree. You should store this tree in a field and then use it in
  * the encode and decode methods.
+ *
+ * The real work happens on bytes: encode(byte[]) produces a packed bit stream
+ * led by a small header holding the original length and the code length of
+ * every symbol, which is all decode(byte[]) needs to rebuild the codes. The
+ * codes are canonical and limited to a maximum length (15 bits by default), so
+ * no tree is ever built; see CanonicalCode. The String methods are adapters
+ * over the byte ones that spell the packed stream out as 0s and 1s.
  */
 public class HuffmanCoding {
 	private static final int R = 256;
-	private Map<Character, String> map;
-	private Map<String, Character> reverseMap;
-	private String text;
-	private Node rootNode;
-
-	private static class Node implements Comparable<Node> {
-		Node leftNode;
-		Node rightNode;
-		int weight;
-		char c;
-
-		public Node(Node leftNode, Node rightNode, int weight, char c) {
-			this.leftNode = leftNode;
-			this.rightNode = rightNode;
-			this.weight = weight;
-			this.c = c;
-		}
+	private static final Charset CHARSET = StandardCharsets.UTF_8;
+	private static final int LENGTH_BITS = 32;
+
+	// inputs at least this big have their bytes counted in parallel.
+	private static final int PARALLEL_THRESHOLD = 1 << 20;
 
-		private boolean isLeaf() {
-			assert ((leftNode == null) && (rightNode == null)) || ((leftNode != null) && (rightNode != null));
-			return (leftNode == null) && (rightNode == null);
+	/**
+	 * Huffman coding as a Codec, building a new code for every input.
+	 */
+	public static final Codec CODEC = new Codec() {
+		@Override
+		public byte[] compress(byte[] data) {
+			return new HuffmanCoding(data).encode(data);
 		}
 
 		@Override
-		public int compareTo(Node o) {
-			return this.weight - o.weight;
+		public byte[] decompress(byte[] compressed) {
+			return decodeBytes(compressed);
 		}
-	}
+	};
+
+	private final int maxLength;
+	private final CanonicalCode code;
+
+	// how long counting took in parallel, or zero if the input was counted
+	// sequentially. Benchmark compares the two.
+	private long parallelNanos;
 
 	/**
 	 * This would be a good place to compute and store the tree.
 	 */
 	public HuffmanCoding(String text) {
-		rootNode = buildTrie(text);
-		map = new HashMap<Character, String>();
-		reverseMap = new HashMap<String, Character>();
-		this.text = text;
-		
+		this(text.getBytes(CHARSET));
+	}
+
+	public HuffmanCoding(byte[] data) {
+		this(data, CanonicalCode.DEFAULT_MAX_LENGTH);
+	}
+
+	/**
+	 * Builds the best code for the given bytes with no code longer than
+	 * maxLength bits.
+	 */
+	public HuffmanCoding(byte[] data, int maxLength) {
+		this(ByteBuffer.wrap(data), maxLength);
+	}
+
+	/**
+	 * Builds the code straight from a buffer, such as a mapped file, without
+	 * copying it.
+	 */
+	public HuffmanCoding(ByteBuffer data) {
+		this(data, CanonicalCode.DEFAULT_MAX_LENGTH);
+	}
+
+	public HuffmanCoding(ByteBuffer data, int maxLength) {
+		this.maxLength = maxLength;
+		this.code = CanonicalCode.fromFrequencies(countFrequencies(data), maxLength);
+	}
+
+	private int[] countFrequencies(ByteBuffer data) {
+		if (data.limit() < PARALLEL_THRESHOLD)
+			return Histogram.count(data, 0, data.limit());
+
+		long start = System.nanoTime();
+		int[] counts = Histogram.countParallel(data);
+		parallelNanos = System.nanoTime() - start;
+		return counts;
+	}
+
+	/**
+	 * Wraps out so that everything written to it is Huffman coded, a block at
+	 * a time with a code built for each block.
+	 */
+	public static OutputStream compressing(OutputStream out) {
+		return new CodecOutputStream(out, CODEC);
+	}
+
+	/**
+	 * Wraps a stream written through compressing(OutputStream) so reading it
+	 * gives back the original bytes.
+	 */
+	public static InputStream decompressing(InputStream in) {
+		return new CodecInputStream(in, CODEC);
 	}
 
 	/**
@@ -58,18 +111,13 @@ public class HuffmanCoding {
 	 * only 1 and 0.
 	 */
 	public String encode(String text) {
-		char input[] = text.toCharArray();
-		ArrayList<String> e = new ArrayList<String>();
-		buildDictionary(rootNode, "");
-		for (char c : input){
-			e.add(map.get(c));
-		}
-		String toReturn = null;
-		for(String s : e){
-			 toReturn = toReturn + s;
-			 //System.out.println(s);
+		byte[] packed = encode(text.getBytes(CHARSET));
+		StringBuilder bits = new StringBuilder(packed.length * 8);
+		for (byte b : packed) {
+			for (int i = 7; i >= 0; i--)
+				bits.append((b >>> i & 1) == 0 ? '0' : '1');
 		}
-		return toReturn;
+		return bits.toString();
 	}
 
 	/**
@@ -77,16 +125,56 @@ public class HuffmanCoding {
 	 * and return the decoded text as a text string.
 	 */
 	public String decode(String encoded) {
-		char output[] = encoded.toCharArray();
-		ArrayList<Character> decode = new ArrayList<Character>();
-		ArrayList<Character> string = new ArrayList<Character>();
-		
-		for(char c : output){
-			decode.add(c);
-			if(map.containsValue(decode.toString()));
-			string.add(reverseMap.get(decode.toString()));
+		byte[] packed = new byte[encoded.length() / 8];
+		for (int i = 0; i < packed.length * 8; i++) {
+			if (encoded.charAt(i) == '1')
+				packed[i >>> 3] |= 0x80 >>> (i & 7);
 		}
-		return string.toString();
+		return new String(decode(packed), CHARSET);
+	}
+
+	/**
+	 * Encodes data with the stored codes, returning the header followed by the
+	 * packed codes. Every byte of data must have appeared in the text the
+	 * codes were built from.
+	 */
+	public byte[] encode(byte[] data) {
+		return encode(ByteBuffer.wrap(data));
+	}
+
+	/**
+	 * Encodes the whole of a buffer, reading it by absolute index so its
+	 * position is left alone.
+	 */
+	public byte[] encode(ByteBuffer data) {
+		int length = data.limit();
+		BitWriter out = new BitWriter(length / 2 + 64);
+		out.writeBits(length, LENGTH_BITS);
+		code.writeLengths(out);
+		for (int i = 0; i < length; i++)
+			code.write(out, data.get(i) & 0xFF);
+		return out.toByteArray();
+	}
+
+	/**
+	 * Decodes the output of encode(byte[]). The codes are rebuilt from the
+	 * header, so this doesn't depend on the codes stored in this instance.
+	 */
+	public byte[] decode(byte[] encoded) {
+		return decodeBytes(encoded);
+	}
+
+	private static byte[] decodeBytes(byte[] encoded) {
+		BitReader in = new BitReader(encoded);
+		int length = (int) in.readBits(LENGTH_BITS);
+		CanonicalCode code = CanonicalCode.readLengths(in, R);
+
+		byte[] output = new byte[length];
+		for (int i = 0; i < length; i++)
+			output[i] = (byte) code.read(in);
+		if (in.remaining() < 0)
+			throw new IllegalArgumentException("huffman stream is truncated");
+		return output;
 	}
 
 	/**
@@ -96,44 +184,18 @@ public class HuffmanCoding {
 	 * out the encoding tree.
 	 */
 	public String getInformation() {
-		return "";
-	}
-
-	private static Node buildTrie(String text) {
-		PriorityQueue<Node> pq = new PriorityQueue<Node>();
-		Map<Character, Integer> freq = new HashMap<>();
-		for (char c: text.toCharArray()){
-			freq.put(c, freq.getOrDefault(c, 0) + 1);
-		}
-		for(HashMap.Entry<Character, Integer> entry : freq.entrySet()){
-			pq.add(new Node(null, null, entry.getValue(), entry.getKey()));
-		}
-		for(Entry<Character, Integer> i : freq.entrySet()){
-			System.out.println(i. getKey() + " : " + i.getValue());
-		}
-
-		// merge two smallest trees
-		while (pq.size() > 1) {
-			Node left = pq.poll();
-			Node right = pq.poll();
-			Node parent = new Node(left, right, left.weight + right.weight, '\0');
-			pq.add(parent);
-		}
-		return pq.poll();
-	}
-	
-	private void buildDictionary(Node node, String code){
-		if (node.leftNode == null && node.rightNode == null){
-			map.put(node.c, code);
-			reverseMap.put(code, node.c);
-			char[] temp = new char[1];
-			temp[0] = node.c;
-			String check = new String(temp);
-			System.out.println(check + " : " + code);
-		}
-		else {
-			buildDictionary(node.leftNode, code + "0");
-			buildDictionary(node.rightNode, code + "1");
+		int symbols = 0;
+		for (int s = 0; s < R; s++) {
+			if (code.length(s) > 0)
+				symbols++;
 		}
+		BitWriter header = new BitWriter();
+		header.writeBits(0, LENGTH_BITS);
+		code.writeLengths(header);
+		String info = "alphabet: " + symbols + " symbols\n" + "longest code: " + code.longest() + " bits (limit "
+				+ maxLength + ")\n" + "header: " + header.toByteArray().length + " bytes\n";
+		if (parallelNanos > 0)
+			info += String.format("counting: %.2f ms on %d workers\n", parallelNanos / 1e6, Histogram.parallelism());
+		return info;
 	}
 }
@@ -1,16 +1,26 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
 /**
  * A new KMP instance is created for every substring search performed. Both the
  * pattern and the text are passed to the constructor and the search method. You
  * could, for example, use the constructor to create the match table and the
  * search method to perform the search itself.
+ *
+ * An instance can also be made from the pattern alone, in which case it's a
+ * compiled pattern: the match table is built once, and the instance can then
+ * search any number of texts, for the first match after a point or for every
+ * match.
  */
-public class KMP {
-	private String text;
-	private String search;
-	private int match[];
+public class KMP implements SubstringSearch {
+	private final String search;
+	private final int match[];
 
 	public KMP(String pattern, String text) {
-		this.text = text;
+		this(pattern);
+	}
+
+	public KMP(String pattern) {
 		this.search = pattern;
 
 		match = matchTable(pattern);
@@ -23,13 +33,27 @@ public class KMP {
 	 * exists, or -1 if it doesn't.
 	 */
 	public int search(String pattern, String text) {
+		return search(text, 0, text.length());
+	}
+
+	/**
+	 * Returns the start of the first match that lies entirely within
+	 * text[from, to), or -1 if there isn't one.
+	 */
+	@Override
+	public int search(CharSequence text, int from, int to) {
+		int m = search.length();
+		if (m == 0)
+			return from <= to ? from : -1;
+
 		int s = 0;
-		int t = 0;
-		
-		while (t + s < text.length() - 1) {
+		int t = from;
+
+		// stop once a match starting at t would run past the end.
+		while (t + m <= to) {
 			if (search.charAt(s) == text.charAt(s + t)) {
 				s++;
-				if (s == pattern.length()) {
+				if (s == m) {
 					return t;
 				}
 			} else if (match[s] > -1) {
@@ -43,7 +67,127 @@ public class KMP {
 		return -1;
 	}
 
+	/**
+	 * Returns the start of every match in text, in order, including matches
+	 * that overlap each other.
+	 */
+	@Override
+	public int[] searchAll(CharSequence text) {
+		return searchAll(text, 0, text.length());
+	}
+
+	/**
+	 * Returns the start of every match that lies entirely within
+	 * text[from, to), in order.
+	 */
+	@Override
+	public int[] searchAll(CharSequence text, int from, int to) {
+		int m = search.length();
+		int[] found = new int[16];
+		int count = 0;
+		if (m == 0)
+			return new int[0];
+
+		int s = 0;
+		int t = from;
+		while (t + m <= to) {
+			if (search.charAt(s) == text.charAt(s + t)) {
+				s++;
+				if (s == m) {
+					if (count == found.length)
+						found = Arrays.copyOf(found, count * 2);
+					found[count++] = t;
+					// carry on from the longest border of the pattern.
+					t = t + s - match[s];
+					s = match[s];
+				}
+			} else if (match[s] > -1) {
+				t = t + s - match[s];
+				s = match[s];
+			} else {
+				t = t + s + 1;
+				s = 0;
+			}
+		}
+		return Arrays.copyOf(found, count);
+	}
+
+	@Override
+	public String pattern() {
+		return search;
+	}
+
+	/**
+	 * Byte level KMP over a buffer, such as a mapped file, returning the
+	 * offset of the first match at or after from, or -1. No UTF-8 character
+	 * encoding starts part way through another, so searching UTF-8 text for
+	 * the UTF-8 bytes of a pattern finds exactly the places the decoded text
+	 * would match. The buffer is read by absolute index.
+	 */
+	public static int search(ByteBuffer text, byte[] pattern, int from) {
+		if (pattern.length == 0)
+			return from <= text.limit() ? from : -1;
+		int[] prefix = prefixTable(pattern);
+
+		int matched = 0;
+		for (int i = from; i < text.limit(); i++) {
+			byte b = text.get(i);
+			while (matched > 0 && pattern[matched] != b)
+				matched = prefix[matched - 1];
+			if (pattern[matched] == b)
+				matched++;
+			if (matched == pattern.length)
+				return i - pattern.length + 1;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the offset of every match of pattern in a buffer, in order.
+	 */
+	public static int[] searchAll(ByteBuffer text, byte[] pattern) {
+		if (pattern.length == 0)
+			return new int[0];
+		int[] prefix = prefixTable(pattern);
+		int[] found = new int[16];
+		int count = 0;
+
+		int matched = 0;
+		for (int i = 0; i < text.limit(); i++) {
+			byte b = text.get(i);
+			while (matched > 0 && pattern[matched] != b)
+				matched = prefix[matched - 1];
+			if (pattern[matched] == b)
+				matched++;
+			if (matched == pattern.length) {
+				if (count == found.length)
+					found = Arrays.copyOf(found, count * 2);
+				found[count++] = i - pattern.length + 1;
+				matched = prefix[matched - 1];
+			}
+		}
+		return Arrays.copyOf(found, count);
+	}
+
+	/**
+	 * prefix[i] is the length of the longest proper prefix of pattern[0..i]
+	 * that is also a suffix of it.
+	 */
+	private static int[] prefixTable(byte[] pattern) {
+		int[] prefix = new int[pattern.length];
+		for (int i = 1, k = 0; i < pattern.length; i++) {
+			while (k > 0 && pattern[i] != pattern[k])
+				k = prefix[k - 1];
+			if (pattern[i] == pattern[k])
+				k++;
+			prefix[i] = k;
+		}
+		return prefix;
+	}
+
 	private int[] matchTable(String word) {
+		if (word.isEmpty())
+			return new int[] { -1 };
 		int[] matchTable = new int[word.length() + 1];
 
 		matchTable[0] = -1;
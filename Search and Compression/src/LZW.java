@@ -0,0 +1,173 @@
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Lempel-Ziv-Welch compression. Rather than pointing back into the text, LZW
+ * builds a dictionary of phrases as it goes: every code written is the
+ * longest phrase already in the dictionary, and that phrase plus the byte
+ * after it becomes the next new one. The decoder builds the same dictionary
+ * from the codes it reads, so nothing but the codes is stored, and it never
+ * needs to look back at its own output.
+ *
+ * The encoder keeps the dictionary as a trie in flat arrays: child holds the
+ * first phrase extending each phrase by one byte, sibling the next phrase
+ * extending the same parent, and symbol the byte each phrase ends in. The
+ * decoder only needs each phrase's prefix code, last byte and length, and
+ * writes phrases out backwards from their last byte.
+ *
+ * Codes 0 to 255 are the single bytes and CLEAR empties the dictionary. Codes
+ * start out 9 bits wide and grow a bit every time the dictionary doubles, up
+ * to MAX_BITS. When the dictionary is full the encoder writes CLEAR and both
+ * sides start again, so the phrases keep up with the text as it changes.
+ *
+ * The output is the original length in 32 bits followed by the codes, most
+ * significant bit first.
+ */
+public class LZW implements Codec {
+	private static final int R = 256;
+	private static final int CLEAR = R;
+	private static final int FIRST = R + 1;
+	private static final int MIN_BITS = 9;
+	private static final int LENGTH_BITS = 32;
+
+	/**
+	 * The widest a code can get, which limits the dictionary to 2^MAX_BITS
+	 * phrases.
+	 */
+	public static final int MAX_BITS = 16;
+	private static final int MAX_CODES = 1 << MAX_BITS;
+
+	private int codes;
+	private int resets;
+
+	/**
+	 * Wraps out so that everything written to it is LZW coded, a block at a
+	 * time with a new dictionary for each block.
+	 */
+	public static OutputStream compressing(OutputStream out) {
+		return new CodecOutputStream(out, new LZW());
+	}
+
+	/**
+	 * Wraps a stream written through compressing(OutputStream) so reading it
+	 * gives back the original bytes.
+	 */
+	public static InputStream decompressing(InputStream in) {
+		return new CodecInputStream(in, new LZW());
+	}
+
+	@Override
+	public byte[] compress(byte[] data) {
+		BitWriter out = new BitWriter(data.length / 2 + 16);
+		out.writeBits(data.length, LENGTH_BITS);
+		codes = 0;
+		resets = 0;
+		if (data.length == 0)
+			return out.toByteArray();
+
+		int[] child = new int[MAX_CODES];
+		int[] sibling = new int[MAX_CODES];
+		byte[] symbol = new byte[MAX_CODES];
+		Arrays.fill(child, 0, R, -1);
+		int next = FIRST;
+
+		int phrase = data[0] & 0xFF;
+		for (int i = 1; i < data.length; i++) {
+			byte c = data[i];
+			int extended = child[phrase];
+			while (extended >= 0 && symbol[extended] != c)
+				extended = sibling[extended];
+			if (extended >= 0) {
+				phrase = extended;
+				continue;
+			}
+
+			out.writeBits(phrase, width(next - 1));
+			codes++;
+			if (next == MAX_CODES) {
+				out.writeBits(CLEAR, width(next - 1));
+				Arrays.fill(child, 0, R, -1);
+				next = FIRST;
+				resets++;
+			} else {
+				symbol[next] = c;
+				child[next] = -1;
+				sibling[next] = child[phrase];
+				child[phrase] = next++;
+			}
+			phrase = c & 0xFF;
+		}
+		out.writeBits(phrase, width(next - 1));
+		codes++;
+		return out.toByteArray();
+	}
+
+	@Override
+	public byte[] decompress(byte[] compressed) {
+		BitReader in = new BitReader(compressed);
+		int n = (int) in.readBits(LENGTH_BITS);
+		byte[] output = new byte[n];
+
+		int[] prefix = new int[MAX_CODES];
+		byte[] last = new byte[MAX_CODES];
+		byte[] first = new byte[MAX_CODES];
+		int[] length = new int[MAX_CODES];
+		for (int s = 0; s < R; s++) {
+			last[s] = first[s] = (byte) s;
+			length[s] = 1;
+		}
+		int next = FIRST;
+
+		// the encoder adds a phrase after every code, but the decoder can't
+		// finish one until it's seen the code after, so it's always one
+		// phrase behind; hence the width is for one more than it has.
+		int previous = -1;
+		int position = 0;
+		while (position < n) {
+			int code = (int) in.readBits(width(previous < 0 ? next - 1 : next));
+			if (code == CLEAR) {
+				next = FIRST;
+				previous = -1;
+				continue;
+			}
+			if (previous >= 0) {
+				if (code > next || next == MAX_CODES)
+					throw new IllegalArgumentException("lzw code " + code + " is out of range");
+				// the new phrase is the previous one plus the first byte of
+				// this one, which is also its own first byte if this is the
+				// phrase being made.
+				prefix[next] = previous;
+				last[next] = code == next ? first[previous] : first[code];
+				first[next] = first[previous];
+				length[next] = length[previous] + 1;
+				next++;
+			} else if (code >= R) {
+				throw new IllegalArgumentException("lzw stream must start with a byte");
+			}
+
+			int end = position + length[code];
+			if (end > n)
+				throw new IllegalArgumentException("lzw stream decodes to the wrong length");
+			int at = code;
+			for (int i = end - 1; i >= position; i--) {
+				output[i] = last[at];
+				at = prefix[at];
+			}
+			position = end;
+			previous = code;
+		}
+		return output;
+	}
+
+	/**
+	 * The bits needed to write any code up to highest.
+	 */
+	private static int width(int highest) {
+		return Math.min(MAX_BITS, Math.max(MIN_BITS, 32 - Integer.numberOfLeadingZeros(highest)));
+	}
+
+	public String getInformation() {
+		return "codes: " + codes + " of up to " + MAX_BITS + " bits\n" + "dictionary resets: " + resets + "\n";
+	}
+}
@@ -1,7 +1,134 @@
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
 /**
  * A new instance of LempelZiv is created for every run.
+ *
+ * Matches are found with a MatchFinder, which hashes the next three chars of
+ * every position and keeps chains of earlier positions with the same hash, so
+ * the window can be tens of kilobytes without the search slowing to a crawl.
+ *
+ * As well as the text format of the assignment there is a binary format on
+ * bytes. It starts with a variable length integer holding the original length
+ * shifted left a bit, with the low bit set if the input was compressed with a
+ * PresetDictionary, in which case the dictionary's id follows in four bytes.
+ * Then come the tokens, each led by a variable length integer v. If the low
+ * bit of v is clear, v >>> 1 literal bytes follow. Otherwise it's a match of
+ * (v >>> 1) + MIN_MATCH bytes, and the distance back follows as another
+ * variable length integer.
+ *
+ * The binary format can be parsed at one of three levels, trading time for
+ * size; the text format is always greedy. GREEDY takes the longest match at
+ * every position. LAZY looks for a match one position on before taking one,
+ * and if that saves more, writes a literal and moves on to it instead. OPTIMAL
+ * finds every match at every position and works out, by dynamic programming,
+ * the sequence of literals and matches that costs the fewest bytes to write.
+ * The output of every level is decompressed the same way.
+ *
+ * With a dictionary, compression carries on from the end of the dictionary's
+ * text as if it had just compressed it, so matches can reach back into it.
+ * The dictionary's positions are hashed once, and every later call copies
+ * those chains, so it costs each input no more than an empty finder would.
+ *
+ * MatchFinder works on a char array, as the text format has to match chars
+ * of any value, so compressing bytes copies them, one char per byte, into a
+ * working array first. That includes a mapped file: the mapping saves reading
+ * the file onto the heap and decoding it to a String, but compression still
+ * holds two bytes of working text for every byte of input. Decompression
+ * needs no such copy.
  */
-public class LempelZiv {
+public class LempelZiv implements Codec {
+	/**
+	 * The window used by the no-argument constructor.
+	 */
+	public static final int DEFAULT_WINDOW_SIZE = 32 * 1024;
+
+	public static final int GREEDY = 0;
+	public static final int LAZY = 1;
+	public static final int OPTIMAL = 2;
+
+	/**
+	 * The names of the levels, indexed by level.
+	 */
+	public static final String[] LEVELS = { "Greedy", "Lazy", "Optimal" };
+
+	// how many earlier positions to try for each match.
+	private static final int MAX_CHAIN = 128;
+
+	// matches at least this long are taken straight away by the lazy and
+	// optimal parsers, as there's little left to gain and a lot of time to
+	// lose weighing up every length along them.
+	private static final int NICE_LENGTH = 64;
+
+	// the most matches the optimal parser considers at one position.
+	private static final int MAX_CANDIDATES = 16;
+
+	// what the optimal parser counts a literal as costing, in bits: the byte
+	// itself and a share of the header of its run.
+	private static final int LITERAL_BITS = 9;
+
+	private final int windowSize;
+	private final int level;
+	private final PresetDictionary dictionary;
+
+	// the match finder over just the dictionary, made on first use.
+	private MatchFinder primer;
+
+	private int tokens;
+	private int matches;
+
+	public LempelZiv() {
+		this(DEFAULT_WINDOW_SIZE);
+	}
+
+	/**
+	 * @param windowSize
+	 *            how many chars back a match may start.
+	 */
+	public LempelZiv(int windowSize) {
+		this(windowSize, GREEDY);
+	}
+
+	/**
+	 * @param level
+	 *            GREEDY, LAZY or OPTIMAL.
+	 */
+	public LempelZiv(int windowSize, int level) {
+		this(windowSize, level, null);
+	}
+
+	/**
+	 * @param dictionary
+	 *            text to prime both compression and decompression with, or
+	 *            null for none. Output compressed with a dictionary can only
+	 *            be decompressed with the same one.
+	 */
+	public LempelZiv(int windowSize, int level, PresetDictionary dictionary) {
+		if (level < GREEDY || level > OPTIMAL)
+			throw new IllegalArgumentException("unknown level " + level);
+		this.windowSize = windowSize;
+		this.level = level;
+		this.dictionary = dictionary;
+	}
+
+	/**
+	 * Wraps out so that everything written to it is compressed into the binary
+	 * token format, a block at a time. Matches don't reach back past the start
+	 * of their block.
+	 */
+	public static OutputStream compressing(OutputStream out) {
+		return new CodecOutputStream(out, new LempelZiv());
+	}
+
+	/**
+	 * Wraps a stream written through compressing(OutputStream) so reading it
+	 * gives back the original bytes.
+	 */
+	public static InputStream decompressing(InputStream in) {
+		return new CodecInputStream(in, new LempelZiv());
+	}
 
 	/**
 	 * Take uncompressed input as a text string, compress it, and return it as a
@@ -11,25 +138,25 @@ public class LempelZiv {
 
 		StringBuilder output = new StringBuilder();
 
+		char[] text = input.toCharArray();
+		MatchFinder finder = new MatchFinder(text, windowSize, MAX_CHAIN);
+		tokens = 0;
+		matches = 0;
+
 		int cursor = 0;
-		int windowSize = 50;
-		while (cursor < input.length()) {
-			int lookahead = 1;
-			int prevMatch = -1;
-			while (true) {
-				String textWindow = input.substring((cursor < windowSize) ? 0 : (cursor - windowSize), cursor);
-				int match = textWindow.indexOf(input.substring(cursor, cursor + lookahead));
-				if (match > -1 && (cursor + lookahead) < input.length()) {
-					prevMatch = match;
-					lookahead++;
-				} else {
-					String extra = "[" + ((prevMatch > -1) ? (textWindow.length() - prevMatch) : 0) + ","
-							+ (lookahead - 1) + "," + input.charAt(cursor + lookahead - 1) + "]";
-					output.append(extra);
-					cursor += lookahead;
-					break;
-				}
-			}
+		while (cursor < text.length) {
+			// every token ends in a literal char, so leave room for one.
+			int length = finder.find(cursor, text.length - cursor - 1);
+			int offset = length > 0 ? finder.distance() : 0;
+			output.append('[').append(offset).append(',').append(length).append(',').append(text[cursor + length])
+					.append(']');
+
+			for (int i = cursor; i <= cursor + length; i++)
+				finder.insert(i);
+			cursor += length + 1;
+			tokens++;
+			if (length > 0)
+				matches++;
 		}
 
 		return output.toString();
@@ -41,27 +168,291 @@ public class LempelZiv {
 	 */
 	public String decompress(String compressed) {
 
-		String output = "";
-
-		java.util.Scanner s = new java.util.Scanner(compressed);
-		s.useDelimiter(""); // One char at a time.
-		while (s.hasNext()) {
-			s.next(); // "["
-			s.useDelimiter(",");
-			int offset = s.nextInt();
-			s.useDelimiter("");
-			s.next(); // ","
-			s.useDelimiter(",");
-			int length = s.nextInt();
-			s.useDelimiter("");
-			s.next(); // ","
-			String c = s.next();
-			s.next(); // "]"
-			String extra = output.substring(output.length() - offset, output.length() - offset + length);
-			output += extra + c;
+		StringBuilder output = new StringBuilder();
+
+		// tokens look like [offset,length,c], where c can be any char at all,
+		// including a comma or bracket, so it's taken by position.
+		int i = 0;
+		while (i < compressed.length()) {
+			int comma = compressed.indexOf(',', i + 1);
+			int offset = Integer.parseInt(compressed.substring(i + 1, comma));
+			int next = compressed.indexOf(',', comma + 1);
+			int length = Integer.parseInt(compressed.substring(comma + 1, next));
+			char c = compressed.charAt(next + 1);
+			i = next + 3;
+
+			// copy one char at a time, as a match can overlap its own output.
+			int start = output.length() - offset;
+			for (int j = 0; j < length; j++)
+				output.append(output.charAt(start + j));
+			output.append(c);
+		}
+
+		return output.toString();
+	}
+
+	/**
+	 * Compresses bytes into the binary token format.
+	 */
+	@Override
+	public byte[] compress(byte[] input) {
+		return compress(ByteBuffer.wrap(input));
+	}
+
+	/**
+	 * Compresses the whole of a buffer, such as a mapped file, into the binary
+	 * token format. The bytes are read by absolute index, so the buffer's
+	 * position is left alone, and copied into a char array for the match
+	 * finder.
+	 */
+	public byte[] compress(ByteBuffer input) {
+		int size = input.limit();
+		ByteBuilder output = new ByteBuilder(size / 2 + 16);
+		output.appendVarInt(size << 1 | (dictionary == null ? 0 : 1));
+		if (dictionary != null)
+			appendInt(output, dictionary.id());
+
+		// the match finder works on chars, so widen the bytes as they're read,
+		// after the dictionary if there is one.
+		int start = dictionary == null ? 0 : dictionary.length();
+		char[] text = new char[start + size];
+		for (int i = 0; i < size; i++)
+			text[start + i] = (char) (input.get(i) & 0xFF);
+		MatchFinder finder;
+		if (dictionary == null) {
+			finder = new MatchFinder(text, windowSize, MAX_CHAIN);
+		} else {
+			System.arraycopy(dictionary.chars(), 0, text, 0, start);
+			if (primer == null) {
+				primer = new MatchFinder(dictionary.chars(), windowSize, MAX_CHAIN);
+				for (int i = 0; i < start; i++)
+					primer.insert(i);
+			}
+			finder = new MatchFinder(text, primer);
+			// the last few positions of the dictionary couldn't be hashed
+			// until there was text after them.
+			for (int i = Math.max(0, start - MatchFinder.MIN_MATCH + 1); i < start; i++)
+				finder.insert(i);
+		}
+		tokens = 0;
+		matches = 0;
+
+		if (level == OPTIMAL)
+			compressOptimal(text, start, finder, output);
+		else
+			compressGreedy(text, start, finder, output);
+		return output.toByteArray();
+	}
+
+	/**
+	 * The greedy and lazy parsers, which decide on each token as they reach
+	 * it. Everything in text before start has already been inserted.
+	 */
+	private void compressGreedy(char[] text, int start, MatchFinder finder, ByteBuilder output) {
+		int literals = 0;
+		int cursor = start;
+		// positions before this have been inserted into the finder.
+		int inserted = start;
+		while (cursor < text.length) {
+			int length = finder.find(cursor, text.length - cursor);
+			int distance = finder.distance();
+			while (level == LAZY && length > 0 && length < NICE_LENGTH) {
+				// would waiting a byte find a match that saves more, even
+				// after paying for the literal? that's a byte, and another
+				// for a run header if it starts a run.
+				finder.insert(inserted++);
+				int next = finder.find(cursor + 1, text.length - cursor - 1);
+				int literalBits = literals > 0 ? 8 : 16;
+				if (next == 0 || savedBits(next, finder.distance()) - literalBits <= savedBits(length, distance))
+					break;
+				literals++;
+				cursor++;
+				length = next;
+				distance = finder.distance();
+			}
+			if (length == 0) {
+				literals++;
+				cursor++;
+			} else {
+				if (literals > 0) {
+					appendLiterals(output, text, cursor - literals, literals);
+					literals = 0;
+					tokens++;
+				}
+				output.appendVarInt((length - MatchFinder.MIN_MATCH) << 1 | 1);
+				output.appendVarInt(distance);
+				cursor += length;
+				tokens++;
+				matches++;
+			}
+			while (inserted < cursor)
+				finder.insert(inserted++);
+		}
+		if (literals > 0) {
+			appendLiterals(output, text, cursor - literals, literals);
+			tokens++;
+		}
+	}
+
+	/**
+	 * The optimal parser. Going forwards through the text, cost[i] is the
+	 * fewest bits known to reach position i, and each position in turn offers
+	 * a literal and every length of every match it has to the positions after
+	 * it. Once the end is reached, the cheapest way there is followed back
+	 * and written out. Everything in text before start has already been
+	 * inserted.
+	 */
+	private void compressOptimal(char[] text, int start, MatchFinder finder, ByteBuilder output) {
+		int n = text.length;
+		long[] cost = new long[n + 1];
+		Arrays.fill(cost, Long.MAX_VALUE);
+		cost[start] = 0;
+		// how the cheapest way to each position got there: a literal if the
+		// length is zero, or a match.
+		int[] stepLength = new int[n + 1];
+		int[] stepDistance = new int[n + 1];
+
+		int[] lengths = new int[MAX_CANDIDATES];
+		int[] distances = new int[MAX_CANDIDATES];
+		int i = start;
+		while (i < n) {
+			if (cost[i] + LITERAL_BITS < cost[i + 1]) {
+				cost[i + 1] = cost[i] + LITERAL_BITS;
+				stepLength[i + 1] = 0;
+			}
+
+			int found = finder.findAll(i, n - i, lengths, distances);
+			finder.insert(i);
+			if (found > 0 && lengths[found - 1] >= NICE_LENGTH) {
+				// take a long match as it is, skipping everything it covers.
+				int length = lengths[found - 1];
+				offer(cost, stepLength, stepDistance, i, length, distances[found - 1]);
+				for (int j = i + 1; j < i + length; j++)
+					finder.insert(j);
+				i += length;
+				continue;
+			}
+			int length = MatchFinder.MIN_MATCH;
+			for (int k = 0; k < found; k++) {
+				for (; length <= lengths[k]; length++)
+					offer(cost, stepLength, stepDistance, i, length, distances[k]);
+			}
+			i++;
+		}
+
+		// follow the steps back from the end, then write them out forwards.
+		int steps = 0;
+		for (int at = n; at > start; at -= Math.max(stepLength[at], 1))
+			steps++;
+		int[] ends = new int[steps];
+		for (int at = n; at > start; at -= Math.max(stepLength[at], 1))
+			ends[--steps] = at;
+
+		int literals = 0;
+		int cursor = start;
+		for (int end : ends) {
+			int length = stepLength[end];
+			if (length == 0) {
+				literals++;
+			} else {
+				if (literals > 0) {
+					appendLiterals(output, text, cursor - literals, literals);
+					literals = 0;
+					tokens++;
+				}
+				output.appendVarInt((length - MatchFinder.MIN_MATCH) << 1 | 1);
+				output.appendVarInt(stepDistance[end]);
+				tokens++;
+				matches++;
+			}
+			cursor = end;
 		}
+		if (literals > 0) {
+			appendLiterals(output, text, cursor - literals, literals);
+			tokens++;
+		}
+	}
+
+	private static void offer(long[] cost, int[] stepLength, int[] stepDistance, int from, int length, int distance) {
+		long total = cost[from] + matchBits(length, distance);
+		if (total < cost[from + length]) {
+			cost[from + length] = total;
+			stepLength[from + length] = length;
+			stepDistance[from + length] = distance;
+		}
+	}
 
-		return output;
+	private static int matchBits(int length, int distance) {
+		return 8 * (varIntSize((length - MatchFinder.MIN_MATCH) << 1 | 1) + varIntSize(distance));
+	}
+
+	/**
+	 * How many bits a match saves over writing its bytes as literals.
+	 */
+	private static int savedBits(int length, int distance) {
+		return length * LITERAL_BITS - matchBits(length, distance);
+	}
+
+	private static int varIntSize(int value) {
+		int size = 1;
+		while ((value & ~0x7F) != 0) {
+			value >>>= 7;
+			size++;
+		}
+		return size;
+	}
+
+	private static void appendInt(ByteBuilder output, int value) {
+		for (int shift = 24; shift >= 0; shift -= 8)
+			output.append(value >>> shift);
+	}
+
+	private static void appendLiterals(ByteBuilder output, char[] text, int from, int count) {
+		output.appendVarInt(count << 1);
+		for (int i = from; i < from + count; i++)
+			output.append(text[i]);
+	}
+
+	/**
+	 * Decompresses the binary token format, going through the tokens once and
+	 * appending straight to the output. Matches that reach back past the
+	 * start of the output are copied from the end of the dictionary.
+	 */
+	@Override
+	public byte[] decompress(byte[] compressed) {
+		ByteReader in = new ByteReader(compressed);
+		int header = in.readVarInt();
+		int length = header >>> 1;
+		int start = 0;
+		if ((header & 1) != 0) {
+			int id = in.read() << 24 | in.read() << 16 | in.read() << 8 | in.read();
+			if (dictionary == null || dictionary.id() != id)
+				throw new IllegalArgumentException(
+						String.format("lempel ziv stream needs dictionary %08x, which wasn't given", id));
+			start = dictionary.length();
+		}
+		ByteBuilder output = new ByteBuilder(length);
+
+		while (output.length() < length) {
+			int token = in.readVarInt();
+			if ((token & 1) == 0) {
+				in.readInto(output, token >>> 1);
+				continue;
+			}
+			int distance = in.readVarInt();
+			int matchLength = (token >>> 1) + MatchFinder.MIN_MATCH;
+			int behind = distance - output.length();
+			if (behind > 0 && behind <= start) {
+				int count = Math.min(behind, matchLength);
+				output.append(dictionary.content(), start - behind, count);
+				matchLength -= count;
+			}
+			if (matchLength > 0)
+				output.copyBack(distance, matchLength);
+		}
+		if (output.length() != length)
+			throw new IllegalArgumentException("lempel ziv stream decodes to the wrong length");
+		return output.toByteArray();
 	}
 
 	/**
@@ -71,6 +462,10 @@ public class LempelZiv {
 	 * information from your compression.
 	 */
 	public String getInformation() {
-		return "";
+		String info = "window: " + windowSize + " characters\n" + "level: " + LEVELS[level] + "\n" + "tokens: " + tokens
+				+ " (" + matches + " matches)\n";
+		if (dictionary != null)
+			info += String.format("dictionary: %08x, %d bytes\n", dictionary.id(), dictionary.length());
+		return info;
 	}
 }
@@ -0,0 +1,165 @@
+/**
+ * LZ77 followed by Huffman coding, in the manner of DEFLATE. The input is
+ * parsed into literals and (length, distance) matches with a MatchFinder, and
+ * then the tokens are entropy coded with two canonical codes: one over
+ * literal bytes and match length buckets, and one over distance buckets.
+ *
+ * Lengths and distances are grouped into buckets by magnitude. Values below 4
+ * get a bucket each, and above that every power of two is split into two
+ * buckets, with the offset into the bucket written as extra bits after its
+ * code. That keeps both alphabets small whatever the window size.
+ *
+ * The output is the original length in 32 bits, the lengths of the two codes,
+ * then the coded tokens.
+ */
+public class LempelZivHuffman implements Codec {
+	private static final int LITERALS = 256;
+	private static final int MAX_MATCH = 258;
+	private static final int LENGTH_CODES = bucket(MAX_MATCH - MatchFinder.MIN_MATCH) + 1;
+	private static final int DISTANCE_CODES = bucket(Integer.MAX_VALUE) + 1;
+	private static final int MAX_CHAIN = 128;
+
+	// a shortest match from further back than this usually costs more bits
+	// than the three literals it replaces.
+	private static final int TOO_FAR = 4096;
+
+	private final int windowSize;
+
+	private int literals;
+	private int matches;
+	private int literalCodeLength;
+	private int distanceCodeLength;
+
+	public LempelZivHuffman() {
+		this(LempelZiv.DEFAULT_WINDOW_SIZE);
+	}
+
+	public LempelZivHuffman(int windowSize) {
+		this.windowSize = windowSize;
+	}
+
+	@Override
+	public byte[] compress(byte[] input) {
+		// parse the whole input first, as the codes depend on the counts.
+		char[] text = new char[input.length];
+		for (int i = 0; i < input.length; i++)
+			text[i] = (char) (input[i] & 0xFF);
+		MatchFinder finder = new MatchFinder(text, windowSize, MAX_CHAIN);
+
+		// symbols[i] is a literal or length symbol, and for a match,
+		// distances[i] is the distance back.
+		int[] symbols = new int[Math.max(input.length, 1)];
+		int[] distances = new int[symbols.length];
+		int[] lengths = new int[symbols.length];
+		int[] symbolFreq = new int[LITERALS + LENGTH_CODES];
+		int[] distanceFreq = new int[DISTANCE_CODES];
+		int tokens = 0;
+		literals = 0;
+		matches = 0;
+
+		int cursor = 0;
+		while (cursor < text.length) {
+			int length = finder.find(cursor, Math.min(MAX_MATCH, text.length - cursor));
+			if (length == MatchFinder.MIN_MATCH && finder.distance() > TOO_FAR)
+				length = 0;
+			if (length == 0) {
+				symbols[tokens++] = text[cursor];
+				symbolFreq[text[cursor]]++;
+				finder.insert(cursor++);
+				literals++;
+				continue;
+			}
+			int symbol = LITERALS + bucket(length - MatchFinder.MIN_MATCH);
+			symbols[tokens] = symbol;
+			lengths[tokens] = length;
+			distances[tokens++] = finder.distance();
+			symbolFreq[symbol]++;
+			distanceFreq[bucket(finder.distance() - 1)]++;
+			for (int i = cursor; i < cursor + length; i++)
+				finder.insert(i);
+			cursor += length;
+			matches++;
+		}
+
+		CanonicalCode symbolCode = CanonicalCode.fromFrequencies(symbolFreq, CanonicalCode.DEFAULT_MAX_LENGTH);
+		CanonicalCode distanceCode = CanonicalCode.fromFrequencies(distanceFreq, CanonicalCode.DEFAULT_MAX_LENGTH);
+		literalCodeLength = symbolCode.longest();
+		distanceCodeLength = distanceCode.longest();
+
+		BitWriter out = new BitWriter(input.length / 3 + 64);
+		out.writeBits(input.length, 32);
+		symbolCode.writeLengths(out);
+		distanceCode.writeLengths(out);
+		for (int i = 0; i < tokens; i++) {
+			int symbol = symbols[i];
+			symbolCode.write(out, symbol);
+			if (symbol >= LITERALS) {
+				writeExtra(out, lengths[i] - MatchFinder.MIN_MATCH);
+				int distance = distances[i] - 1;
+				distanceCode.write(out, bucket(distance));
+				writeExtra(out, distance);
+			}
+		}
+		return out.toByteArray();
+	}
+
+	@Override
+	public byte[] decompress(byte[] compressed) {
+		BitReader in = new BitReader(compressed);
+		int length = (int) in.readBits(32);
+		CanonicalCode symbolCode = CanonicalCode.readLengths(in, LITERALS + LENGTH_CODES);
+		CanonicalCode distanceCode = CanonicalCode.readLengths(in, DISTANCE_CODES);
+
+		ByteBuilder output = new ByteBuilder(length);
+		while (output.length() < length) {
+			int symbol = symbolCode.read(in);
+			if (symbol < LITERALS) {
+				output.append(symbol);
+			} else {
+				int matchLength = readExtra(in, symbol - LITERALS) + MatchFinder.MIN_MATCH;
+				int distance = readExtra(in, distanceCode.read(in)) + 1;
+				output.copyBack(distance, matchLength);
+			}
+		}
+		if (output.length() != length || in.remaining() < 0)
+			throw new IllegalArgumentException("lempel ziv huffman stream is corrupt");
+		return output.toByteArray();
+	}
+
+	public String getInformation() {
+		return "window: " + windowSize + " bytes\n" + "tokens: " + (literals + matches) + " (" + literals
+				+ " literals, " + matches + " matches)\n" + "longest codes: " + literalCodeLength
+				+ " bits for literals and lengths, " + distanceCodeLength + " bits for distances\n";
+	}
+
+	/**
+	 * The bucket that value falls in. Values below 4 have a bucket each; above
+	 * that, bucket 2h holds [2^h, 1.5 * 2^h) and bucket 2h + 1 the rest up to
+	 * 2^(h + 1).
+	 */
+	private static int bucket(int value) {
+		if (value < 4)
+			return value;
+		int high = 31 - Integer.numberOfLeadingZeros(value);
+		return 2 * high + ((value >>> (high - 1)) & 1);
+	}
+
+	private static int extraBits(int bucket) {
+		return bucket < 4 ? 0 : (bucket >>> 1) - 1;
+	}
+
+	private static int base(int bucket) {
+		if (bucket < 4)
+			return bucket;
+		return (2 | (bucket & 1)) << ((bucket >>> 1) - 1);
+	}
+
+	private static void writeExtra(BitWriter out, int value) {
+		int bucket = bucket(value);
+		out.writeBits(value - base(bucket), extraBits(bucket));
+	}
+
+	private static int readExtra(BitReader in, int bucket) {
+		return base(bucket) + (int) in.readBits(extraBits(bucket));
+	}
+}
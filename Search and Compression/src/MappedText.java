@@ -0,0 +1,67 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Helpers for working on a file's bytes where they are, through a read-only
+ * memory mapping, rather than reading and decoding the whole file into a
+ * String first. Text files are taken to be UTF-8.
+ */
+public class MappedText {
+
+	/**
+	 * Maps the whole of file read-only. The mapping stays valid after the
+	 * channel is closed.
+	 */
+	public static MappedByteBuffer map(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+	}
+
+	/**
+	 * Converts an offset into UTF-8 bytes to the index of the same place in
+	 * the decoded String. Every byte that starts a character counts as one
+	 * char, except four byte sequences, which decode to a surrogate pair.
+	 */
+	public static int charIndex(ByteBuffer utf8, int byteIndex) {
+		int chars = 0;
+		for (int i = 0; i < byteIndex; i++) {
+			int b = utf8.get(i);
+			if ((b & 0xC0) != 0x80)
+				chars++;
+			if ((b & 0xF8) == 0xF0)
+				chars++;
+		}
+		return chars;
+	}
+
+	/**
+	 * Converts a sorted list of byte offsets to String indices in one pass
+	 * over the buffer, in place.
+	 */
+	public static void charIndices(ByteBuffer utf8, int[] byteIndices) {
+		int chars = 0;
+		int i = 0;
+		for (int k = 0; k < byteIndices.length; k++) {
+			for (; i < byteIndices[k]; i++) {
+				int b = utf8.get(i);
+				if ((b & 0xC0) != 0x80)
+					chars++;
+				if ((b & 0xF8) == 0xF0)
+					chars++;
+			}
+			byteIndices[k] = chars;
+		}
+	}
+
+	/**
+	 * Whether the whole of buffer holds exactly the given bytes.
+	 */
+	public static boolean contentEquals(ByteBuffer buffer, byte[] bytes) {
+		return buffer.limit() == bytes.length && buffer.duplicate().rewind().equals(ByteBuffer.wrap(bytes));
+	}
+}
@@ -0,0 +1,171 @@
+import java.util.Arrays;
+
+/**
+ * Finds earlier matches for positions in a char array, for LZ77 style
+ * compression. Positions are hashed on their next MIN_MATCH chars: head holds
+ * the most recent position inserted for each hash, and prev links every
+ * position to the previous one with the same hash. Walking that chain visits
+ * the candidates newest (closest) first, and none of it allocates.
+ *
+ * Callers find a match at a position before inserting it, and should insert
+ * every position they pass over so later matches can refer back to it.
+ */
+public class MatchFinder {
+	public static final int MIN_MATCH = 3;
+
+	private static final int HASH_BITS = 15;
+
+	private final char[] data;
+	private final int windowSize;
+	private final int maxChain;
+
+	// head is indexed by hash and prev by position, wrapped around with mask.
+	// both hold -1 where there's no earlier position.
+	private final int[] head;
+	private final int[] prev;
+	private final int mask;
+
+	private int distance;
+
+	/**
+	 * @param windowSize
+	 *            how far back a match may start.
+	 * @param maxChain
+	 *            how many candidates to try for each position before settling
+	 *            for the best found so far.
+	 */
+	public MatchFinder(char[] data, int windowSize, int maxChain) {
+		if (windowSize < 1)
+			throw new IllegalArgumentException("window size must be positive");
+		this.data = data;
+		this.windowSize = windowSize;
+		this.maxChain = maxChain;
+		this.head = new int[1 << HASH_BITS];
+		Arrays.fill(head, -1);
+		// prev only has to reach back as far as the window, or the whole
+		// input if that's shorter.
+		int capacity = 2;
+		while (capacity < windowSize && capacity < data.length)
+			capacity <<= 1;
+		this.prev = new int[capacity];
+		this.mask = capacity - 1;
+	}
+
+	/**
+	 * Makes a finder for data that starts with the text primer was made for,
+	 * with every position primer has inserted already inserted, by copying its
+	 * chains rather than hashing that text again.
+	 */
+	public MatchFinder(char[] data, MatchFinder primer) {
+		this.data = data;
+		this.windowSize = primer.windowSize;
+		this.maxChain = primer.maxChain;
+		this.head = primer.head.clone();
+		// data is at least as long as the primer's, so prev is at least as
+		// big, and the positions the primer holds sit at the same indices.
+		int capacity = primer.prev.length;
+		while (capacity < windowSize && capacity < data.length)
+			capacity <<= 1;
+		this.prev = Arrays.copyOf(primer.prev, capacity);
+		this.mask = capacity - 1;
+	}
+
+	/**
+	 * Adds position to the chains, so later positions can match against it.
+	 */
+	public void insert(int position) {
+		if (position + MIN_MATCH > data.length)
+			return;
+		int hash = hash(position);
+		prev[position & mask] = head[hash];
+		head[hash] = position;
+	}
+
+	/**
+	 * Returns the length of the longest match for the text at position, no
+	 * longer than maxLength, or zero if there's no match of at least
+	 * MIN_MATCH chars. The match starts distance() chars back. Matches may run
+	 * on past position, overlapping the text they copy.
+	 */
+	public int find(int position, int maxLength) {
+		maxLength = Math.min(maxLength, data.length - position);
+		if (maxLength < MIN_MATCH)
+			return 0;
+
+		int best = 0;
+		int limit = position - windowSize;
+		int candidate = head[hash(position)];
+		for (int chain = 0; chain < maxChain && candidate >= 0 && candidate >= limit; chain++) {
+			// check the char that would make this the best match first, as it
+			// rules out most candidates without a full comparison.
+			if (data[candidate + best] == data[position + best]) {
+				int length = 0;
+				while (length < maxLength && data[candidate + length] == data[position + length])
+					length++;
+				if (length > best) {
+					best = length;
+					distance = position - candidate;
+					if (length == maxLength)
+						break;
+				}
+			}
+			int next = prev[candidate & mask];
+			if (next >= candidate)
+				break;
+			candidate = next;
+		}
+		return best >= MIN_MATCH ? best : 0;
+	}
+
+	/**
+	 * Finds every match for the text at position that is longer than all the
+	 * ones closer to it, for parsers that want to weigh a short close match
+	 * against a long far one. They go into lengths and distances in order of
+	 * increasing length (and so distance), each the closest match that long,
+	 * and the number found is returned. If there are more than the arrays
+	 * hold, the longest found replaces the last.
+	 */
+	public int findAll(int position, int maxLength, int[] lengths, int[] distances) {
+		maxLength = Math.min(maxLength, data.length - position);
+		if (maxLength < MIN_MATCH)
+			return 0;
+
+		int found = 0;
+		int best = MIN_MATCH - 1;
+		int limit = position - windowSize;
+		int candidate = head[hash(position)];
+		for (int chain = 0; chain < maxChain && candidate >= 0 && candidate >= limit; chain++) {
+			if (data[candidate + best] == data[position + best]) {
+				int length = 0;
+				while (length < maxLength && data[candidate + length] == data[position + length])
+					length++;
+				if (length > best) {
+					best = length;
+					if (found == lengths.length)
+						found--;
+					lengths[found] = length;
+					distances[found++] = position - candidate;
+					if (length == maxLength)
+						break;
+				}
+			}
+			int next = prev[candidate & mask];
+			if (next >= candidate)
+				break;
+			candidate = next;
+		}
+		return found;
+	}
+
+	/**
+	 * How far back the last match found by find starts.
+	 */
+	public int distance() {
+		return distance;
+	}
+
+	private int hash(int position) {
+		int h = (data[position] * 31 + data[position + 1]) * 31 + data[position + 2];
+		return (h * 0x9E3779B1) >>> (32 - HASH_BITS);
+	}
+}
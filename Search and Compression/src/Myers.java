@@ -0,0 +1,123 @@
+import java.util.Arrays;
+
+/**
+ * Myers' bit-vector algorithm for approximate search. It works on the same
+ * dynamic programming table as the textbook edit distance search, but only
+ * stores the differences between neighbouring cells in a column, which are
+ * always -1, 0 or +1, as two bit vectors. A whole column is then worked out
+ * with a handful of word operations, whatever k is, and the distance for the
+ * full pattern is tracked by adding up the differences along the bottom row.
+ *
+ * Patterns longer than 64 chars are split into blocks of 64 rows, processed
+ * top to bottom with the horizontal difference out of each block carried into
+ * the next (Hyyro's extension).
+ */
+public class Myers implements FuzzySearch {
+	private final String search;
+	private final int[] charClass;
+	private final int blocks;
+	// peq[c * blocks + b] has a bit set for each row of block b whose
+	// pattern char is in class c.
+	private final long[] peq;
+
+	public Myers(String pattern) {
+		this.search = pattern;
+
+		int m = pattern.length();
+		charClass = FuzzySearch.charClasses(pattern);
+		int classes = 1;
+		for (int i = 0; i < m; i++)
+			classes = Math.max(classes, charClass[pattern.charAt(i)] + 1);
+		blocks = Math.max(1, (m + 63) >>> 6);
+		peq = new long[classes * blocks];
+		for (int i = 0; i < m; i++)
+			peq[charClass[pattern.charAt(i)] * blocks + (i >>> 6)] |= 1L << i;
+	}
+
+	@Override
+	public String pattern() {
+		return search;
+	}
+
+	@Override
+	public int[] searchRuns(CharSequence text, int k, int span) {
+		int m = search.length();
+		FuzzyMatches found = new FuzzyMatches(span);
+		if (m == 0)
+			return found.toArray();
+
+		if (blocks == 1)
+			return searchWord(text, k, found);
+
+		// positive and negative vertical differences, each column starting
+		// as 1, 2, 3... down the rows.
+		long[] plus = new long[blocks];
+		long[] minus = new long[blocks];
+		Arrays.fill(plus, -1L);
+		long last = 1L << (m - 1);
+		int score = m;
+
+		for (int i = 0; i < text.length(); i++) {
+			int base = charClass[text.charAt(i)] * blocks;
+			// the top row is all zeros in a search, so nothing comes in.
+			int carry = 0;
+			for (int b = 0; b < blocks; b++) {
+				long eq = peq[base + b];
+				long pv = plus[b];
+				long mv = minus[b];
+				long high = b == blocks - 1 ? last : 1L << 63;
+
+				long xv = eq | mv;
+				if (carry < 0)
+					eq |= 1;
+				long xh = (((eq & pv) + pv) ^ pv) | eq;
+				long ph = mv | ~(xh | pv);
+				long mh = pv & xh;
+
+				int out = (ph & high) != 0 ? 1 : (mh & high) != 0 ? -1 : 0;
+				ph <<= 1;
+				mh <<= 1;
+				if (carry < 0)
+					mh |= 1;
+				else if (carry > 0)
+					ph |= 1;
+				plus[b] = mh | ~(xv | ph);
+				minus[b] = ph & xv;
+				carry = out;
+			}
+			score += carry;
+			if (score <= k)
+				found.add(i + 1, score);
+		}
+		return found.toArray();
+	}
+
+	/**
+	 * The same search for a pattern that fits in one word, with the
+	 * differences kept in locals.
+	 */
+	private int[] searchWord(CharSequence text, int k, FuzzyMatches found) {
+		long last = 1L << (search.length() - 1);
+		long pv = -1L;
+		long mv = 0;
+		int score = search.length();
+		for (int i = 0; i < text.length(); i++) {
+			long eq = peq[charClass[text.charAt(i)]];
+			long xv = eq | mv;
+			long xh = (((eq & pv) + pv) ^ pv) | eq;
+			long ph = mv | ~(xh | pv);
+			long mh = pv & xh;
+			if ((ph & last) != 0)
+				score++;
+			else if ((mh & last) != 0)
+				score--;
+			ph <<= 1;
+			mh <<= 1;
+			pv = mh | ~(xv | ph);
+			mv = ph & xv;
+			if (score <= k)
+				found.add(i + 1, score);
+		}
+		return found.toArray();
+	}
+}
@@ -0,0 +1,135 @@
+/**
+ * Huffman coding with an order 1 model: every byte is coded with a code built
+ * for the byte before it, so after a 'q' a 'u' costs almost nothing. Natural
+ * language text is far more predictable one byte in than HuffmanCoding's
+ * single code can see.
+ *
+ * A code costs its lengths in the header, which rare contexts don't win back,
+ * so each context only gets its own code if the bits it saves over the shared
+ * order 0 code pay for its header. The rest fall back to the order 0 code.
+ * Context codes are limited to CONTEXT_MAX_LENGTH bits, which is within the
+ * width CanonicalCode decodes with one table lookup, and the decoder keeps
+ * one CanonicalCode per context in a flat array, with fallback contexts all
+ * pointing at the order 0 one.
+ *
+ * The output is the original length in 32 bits, the order 0 code lengths,
+ * then for each of the 256 contexts a bit saying whether it has a code of its
+ * own, followed by its lengths if it does, and then the coded bytes. The
+ * first byte is coded in context 0.
+ */
+public class OrderOneHuffman implements Codec {
+	private static final int R = 256;
+	private static final int LENGTH_BITS = 32;
+
+	/**
+	 * The longest code a context may have.
+	 */
+	public static final int CONTEXT_MAX_LENGTH = 11;
+
+	private int length;
+	private int contexts;
+	private int headerBits;
+	private long order0Bits;
+
+	/**
+	 * Compresses data, coding each byte in the context of the one before it.
+	 */
+	@Override
+	public byte[] compress(byte[] data) {
+		int n = data.length;
+		int[] counts = new int[R * R];
+		int[] order0 = new int[R];
+		int previous = 0;
+		for (byte b : data) {
+			int s = b & 0xFF;
+			counts[previous << 8 | s]++;
+			order0[s]++;
+			previous = s;
+		}
+
+		BitWriter out = new BitWriter(n / 2 + 1024);
+		out.writeBits(n, LENGTH_BITS);
+		CanonicalCode shared = CanonicalCode.fromFrequencies(order0, CanonicalCode.DEFAULT_MAX_LENGTH);
+		shared.writeLengths(out);
+
+		CanonicalCode[] codes = new CanonicalCode[R];
+		contexts = 0;
+		for (int c = 0; c < R; c++) {
+			codes[c] = shared;
+			int[] freq = new int[R];
+			System.arraycopy(counts, c << 8, freq, 0, R);
+			long sharedBits = 0;
+			int used = 0;
+			for (int s = 0; s < R; s++) {
+				sharedBits += (long) freq[s] * shared.length(s);
+				if (freq[s] > 0)
+					used++;
+			}
+			if (used == 0) {
+				out.writeBit(0);
+				continue;
+			}
+
+			CanonicalCode own = CanonicalCode.fromFrequencies(freq, CONTEXT_MAX_LENGTH);
+			BitWriter header = new BitWriter();
+			own.writeLengths(header);
+			long ownBits = header.toByteArray().length * 8L + 1;
+			for (int s = 0; s < R; s++)
+				ownBits += (long) freq[s] * own.length(s);
+			if (ownBits < sharedBits) {
+				out.writeBit(1);
+				own.writeLengths(out);
+				codes[c] = own;
+				contexts++;
+			} else {
+				out.writeBit(0);
+			}
+		}
+		headerBits = (int) out.bitLength();
+
+		previous = 0;
+		for (byte b : data) {
+			int s = b & 0xFF;
+			codes[previous].write(out, s);
+			previous = s;
+		}
+
+		length = n;
+		order0Bits = 0;
+		for (int s = 0; s < R; s++)
+			order0Bits += (long) order0[s] * shared.length(s);
+		return out.toByteArray();
+	}
+
+	/**
+	 * Decodes the output of compress, following the contexts along as the
+	 * bytes come out.
+	 */
+	@Override
+	public byte[] decompress(byte[] compressed) {
+		BitReader in = new BitReader(compressed);
+		int n = (int) in.readBits(LENGTH_BITS);
+		CanonicalCode shared = CanonicalCode.readLengths(in, R);
+		CanonicalCode[] codes = new CanonicalCode[R];
+		for (int c = 0; c < R; c++)
+			codes[c] = in.readBit() == 1 ? CanonicalCode.readLengths(in, R) : shared;
+
+		byte[] output = new byte[n];
+		int previous = 0;
+		for (int i = 0; i < n; i++) {
+			previous = codes[previous].read(in);
+			output[i] = (byte) previous;
+		}
+		if (in.remaining() < 0)
+			throw new IllegalArgumentException("order 1 huffman stream is truncated");
+		return output;
+	}
+
+	public String getInformation() {
+		String info = "contexts with their own code: " + contexts + " of " + R + "\n" + "header: " + (headerBits + 7) / 8
+				+ " bytes\n";
+		if (length > 0)
+			info += String.format("order 0 alone would take %.3f bits/byte\n", (double) order0Bits / length);
+		return info;
+	}
+}
@@ -0,0 +1,100 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Runs any SubstringSearch over chunks of a text in parallel. Each chunk is
+ * searched together with the first m - 1 chars of the next, for a pattern of m
+ * chars, so a match that straddles the boundary is still found, and found only
+ * once: a match that starts in the next chunk would need to run past the end
+ * of the overlap. The chunks' matches are already in order, so merging them is
+ * just concatenation.
+ *
+ * The text is cut into a few chunks per worker, rather than exactly one, so a
+ * worker that finishes early can steal the rest of someone else's.
+ */
+public class ParallelSearch implements SubstringSearch {
+	// chunks per worker, and the smallest chunk worth a task of its own.
+	private static final int CHUNKS_PER_WORKER = 4;
+	private static final int MIN_CHUNK = 1 << 16;
+
+	private final SubstringSearch engine;
+	private final ForkJoinPool pool;
+
+	/**
+	 * Searches with engine on the common fork-join pool.
+	 */
+	public ParallelSearch(SubstringSearch engine) {
+		this(engine, ForkJoinPool.commonPool());
+	}
+
+	public ParallelSearch(SubstringSearch engine, ForkJoinPool pool) {
+		this.engine = engine;
+		this.pool = pool;
+	}
+
+	/**
+	 * The engine each chunk is searched with.
+	 */
+	public SubstringSearch engine() {
+		return engine;
+	}
+
+	@Override
+	public String pattern() {
+		return engine.pattern();
+	}
+
+	/**
+	 * Finding the first match is left to the engine on one thread; a chunk
+	 * can't stop early just because a later chunk has found something.
+	 */
+	@Override
+	public int search(CharSequence text, int from, int to) {
+		return engine.search(text, from, to);
+	}
+
+	@Override
+	public int[] searchAll(CharSequence text, int from, int to) {
+		if (pattern().isEmpty())
+			return new int[0];
+		int chunk = Math.max(MIN_CHUNK, (to - from) / (pool.getParallelism() * CHUNKS_PER_WORKER) + 1);
+		return pool.invoke(new SearchTask(text, from, to, to, chunk));
+	}
+
+	private class SearchTask extends RecursiveTask<int[]> {
+		private static final long serialVersionUID = 1L;
+
+		private final CharSequence text;
+		private final int from;
+		private final int to;
+		// the end of the whole search, which no match may run past.
+		private final int limit;
+		private final int chunk;
+
+		SearchTask(CharSequence text, int from, int to, int limit, int chunk) {
+			this.text = text;
+			this.from = from;
+			this.to = to;
+			this.limit = limit;
+			this.chunk = chunk;
+		}
+
+		@Override
+		protected int[] compute() {
+			if (to - from <= chunk) {
+				// matches starting in [from, to), which may end in the overlap.
+				int end = (int) Math.min((long) to + pattern().length() - 1, limit);
+				return engine.searchAll(text, from, end);
+			}
+			int middle = (from + to) >>> 1;
+			SearchTask left = new SearchTask(text, from, middle, limit, chunk);
+			left.fork();
+			int[] right = new SearchTask(text, middle, to, limit, chunk).compute();
+			int[] found = left.join();
+			int[] merged = Arrays.copyOf(found, found.length + right.length);
+			System.arraycopy(right, 0, merged, found.length, right.length);
+			return merged;
+		}
+	}
+}
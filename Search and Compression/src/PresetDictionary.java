@@ -0,0 +1,164 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Adler32;
+
+/**
+ * Text that LempelZiv treats as coming just before every input, so that short
+ * records have something to match against from their very first byte. Both
+ * sides have to have the same dictionary; the compressed output names it by
+ * id(), the Adler-32 checksum of its bytes as in zlib, so the decompressor can
+ * check it was given the right one.
+ *
+ * Only the last window's worth of a dictionary can be reached by a match, so
+ * there's no point making one longer than the LempelZiv window.
+ */
+public class PresetDictionary {
+	/**
+	 * The size train makes dictionaries by default.
+	 */
+	public static final int DEFAULT_SIZE = 16 * 1024;
+
+	// train scores segments of SEGMENT bytes by how common their K byte
+	// substrings are across the samples.
+	private static final int SEGMENT = 48;
+	private static final int K = 6;
+	private static final int HASH_BITS = 20;
+
+	private final byte[] content;
+	private final char[] chars;
+	private final int id;
+
+	public PresetDictionary(byte[] content) {
+		this.content = content.clone();
+		this.chars = new char[content.length];
+		for (int i = 0; i < content.length; i++)
+			chars[i] = (char) (content[i] & 0xFF);
+		Adler32 checksum = new Adler32();
+		checksum.update(content);
+		this.id = (int) checksum.getValue();
+	}
+
+	/**
+	 * Reads a dictionary saved with save(File).
+	 */
+	public static PresetDictionary load(File file) throws IOException {
+		return new PresetDictionary(Files.readAllBytes(file.toPath()));
+	}
+
+	public void save(File file) throws IOException {
+		Files.write(file.toPath(), content);
+	}
+
+	/**
+	 * Builds a dictionary of no more than size bytes from the substrings that
+	 * turn up in the most samples.
+	 *
+	 * Every K byte substring is counted once for each sample it appears in.
+	 * The samples, laid end to end, are then cut into one stretch per segment
+	 * the dictionary has room for, and the segment from each stretch whose
+	 * substrings have the highest total count is taken. Taking a segment sets
+	 * the counts of its substrings to zero, so the same text isn't picked
+	 * twice. The segments are put in order of score with the best last, where
+	 * matches against it are shortest to write. A size below SEGMENT gets one
+	 * segment of that size.
+	 */
+	public static PresetDictionary train(List<byte[]> samples, int size) {
+		int total = 0;
+		for (byte[] sample : samples)
+			total += sample.length;
+		byte[] all = new byte[total];
+		int offset = 0;
+		for (byte[] sample : samples) {
+			System.arraycopy(sample, 0, all, offset, sample.length);
+			offset += sample.length;
+		}
+		if (total <= size)
+			return new PresetDictionary(all);
+		int segment = Math.min(SEGMENT, size);
+		if (segment <= 0)
+			return new PresetDictionary(new byte[0]);
+
+		int[] counts = new int[1 << HASH_BITS];
+		int[] lastSample = new int[1 << HASH_BITS];
+		offset = 0;
+		for (int s = 0; s < samples.size(); s++) {
+			int length = samples.get(s).length;
+			for (int i = offset; i + K <= offset + length; i++) {
+				int hash = hash(all, i);
+				if (lastSample[hash] != s + 1) {
+					lastSample[hash] = s + 1;
+					counts[hash]++;
+				}
+			}
+			offset += length;
+		}
+
+		int segments = size / segment;
+		int stretch = total / segments;
+		long[] chosen = new long[segments];
+		for (int e = 0; e < segments; e++) {
+			int from = e * stretch;
+			int to = Math.min(from + stretch, total - segment);
+			int best = from;
+			long bestScore = -1;
+			long score = 0;
+			for (int i = from; i < Math.min(from + segment - K + 1, total - K + 1); i++)
+				score += counts[hash(all, i)];
+			for (int start = from; start <= to; start++) {
+				if (score > bestScore) {
+					bestScore = score;
+					best = start;
+				}
+				// slide the window along a byte. a segment shorter than K
+				// has no substrings to score, so they all score 0.
+				if (segment >= K) {
+					score -= counts[hash(all, start)];
+					if (start + segment - K + 1 <= total - K)
+						score += counts[hash(all, start + segment - K + 1)];
+				}
+			}
+			for (int i = best; i <= best + segment - K; i++)
+				counts[hash(all, i)] = 0;
+			chosen[e] = bestScore << 32 | best;
+		}
+
+		Arrays.sort(chosen);
+		byte[] content = new byte[segments * segment];
+		for (int e = 0; e < segments; e++)
+			System.arraycopy(all, (int) chosen[e], content, e * segment, segment);
+		return new PresetDictionary(content);
+	}
+
+	private static int hash(byte[] data, int position) {
+		long h = 0;
+		for (int i = 0; i < K; i++)
+			h = h << 8 | (data[position + i] & 0xFF);
+		return (int) ((h * 0x9E3779B97F4A7C15L) >>> (64 - HASH_BITS));
+	}
+
+	public int length() {
+		return content.length;
+	}
+
+	/**
+	 * The Adler-32 checksum of the dictionary, which identifies it in
+	 * compressed output.
+	 */
+	public int id() {
+		return id;
+	}
+
+	byte[] content() {
+		return content;
+	}
+
+	/**
+	 * The dictionary's bytes widened to chars, as LempelZiv matches on chars.
+	 */
+	char[] chars() {
+		return chars;
+	}
+}
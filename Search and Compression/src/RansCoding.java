@@ -0,0 +1,367 @@
+import java.nio.ByteBuffer;
+
+/**
+ * An order 0 entropy coder like HuffmanCoding, but using range asymmetric
+ * numeral systems (rANS) instead of prefix codes. A prefix code spends a whole
+ * number of bits on every symbol, which wastes up to a bit each when the
+ * distribution is skewed; rANS carries the fractions over in its state, so
+ * the output gets within a whisker of the entropy.
+ *
+ * The byte frequencies are scaled to add up to 2^PROB_BITS, with every byte
+ * that occurs getting at least 1, which lets the decoder find each symbol by
+ * looking the low bits of its state up in a flat table. The state is kept
+ * between L and 256 L and moved in and out a byte at a time.
+ *
+ * STATES coders take turns, symbol i going to coder i % STATES, so the decode
+ * loop has that many independent chains of work for the processor to overlap
+ * rather than one long one. rANS works like a stack, so encoding runs
+ * backwards from the end of the input and the output is filled from its end
+ * too; the final states go on top, first coder last, so the decoder can read
+ * everything forwards.
+ *
+ * The output is the original length, a bitmap of the bytes that occur and
+ * the frequency of each, all as variable length integers apart from the
+ * bitmap, followed by the coded stream.
+ */
+public class RansCoding {
+	private static final int R = 256;
+
+	/**
+	 * The frequencies add up to 2^PROB_BITS. 12 bits keeps the decoder's
+	 * lookup table at 4KB, and gives rare bytes a cost of at most 12 bits.
+	 */
+	public static final int PROB_BITS = 12;
+	private static final int M = 1 << PROB_BITS;
+	private static final int MASK = M - 1;
+
+	// the lower bound on the state. it stays below L << 8, so it fits in an int.
+	private static final int L = 1 << 23;
+
+	/**
+	 * How many coders are interleaved.
+	 */
+	public static final int STATES = 4;
+
+	/**
+	 * rANS coding as a Codec, building new frequencies for every input.
+	 */
+	public static final Codec CODEC = new Codec() {
+		@Override
+		public byte[] compress(byte[] data) {
+			return new RansCoding(data).encode(data);
+		}
+
+		@Override
+		public byte[] decompress(byte[] compressed) {
+			return decodeBytes(compressed);
+		}
+	};
+
+	private final int[] counts;
+	private final int[] freq;
+	private final int[] cumulative;
+
+	private long inputLength;
+	private int encodedLength;
+	private int headerLength;
+
+	public RansCoding(byte[] data) {
+		this(ByteBuffer.wrap(data));
+	}
+
+	/**
+	 * Scales the byte counts of data to make the frequencies, reading the
+	 * buffer in place.
+	 */
+	public RansCoding(ByteBuffer data) {
+		counts = data.limit() < (1 << 20) ? Histogram.count(data, 0, data.limit()) : Histogram.countParallel(data);
+		freq = normalise(counts);
+		cumulative = cumulative(freq);
+	}
+
+	/**
+	 * Scales counts so they add up to 2^PROB_BITS, keeping every nonzero count
+	 * at 1 or more. Rounding leaves the total a little off, so the difference
+	 * is made up on the most frequent bytes, where it costs the least.
+	 */
+	static int[] normalise(int[] counts) {
+		long total = 0;
+		for (int c : counts)
+			total += c;
+		int[] freq = new int[counts.length];
+		if (total == 0)
+			return freq;
+
+		int sum = 0;
+		for (int s = 0; s < counts.length; s++) {
+			if (counts[s] > 0) {
+				freq[s] = (int) Math.max(1, Math.round((double) counts[s] * M / total));
+				sum += freq[s];
+			}
+		}
+		while (sum != M) {
+			int largest = 0;
+			for (int s = 1; s < freq.length; s++) {
+				if (freq[s] > freq[largest])
+					largest = s;
+			}
+			// never take a byte below 1.
+			int change = sum < M ? M - sum : -Math.min(sum - M, freq[largest] - 1);
+			freq[largest] += change;
+			sum += change;
+		}
+		return freq;
+	}
+
+	private static int[] cumulative(int[] freq) {
+		int[] cumulative = new int[freq.length];
+		for (int s = 1; s < freq.length; s++)
+			cumulative[s] = cumulative[s - 1] + freq[s - 1];
+		return cumulative;
+	}
+
+	/**
+	 * Encodes data with the stored frequencies. Every byte of data must have
+	 * appeared in the data they were built from.
+	 */
+	public byte[] encode(byte[] data) {
+		return encode(ByteBuffer.wrap(data));
+	}
+
+	/**
+	 * Encodes the whole of a buffer, reading it by absolute index so its
+	 * position is left alone.
+	 */
+	public byte[] encode(ByteBuffer data) {
+		int n = data.limit();
+		ByteBuilder header = new ByteBuilder();
+		header.appendVarInt(n);
+		if (n > 0)
+			writeFrequencies(header);
+
+		// each symbol puts out at most two bytes, as no frequency is below 1.
+		Encoder out = new Encoder(2 * n + 4 * STATES);
+		int x0 = L, x1 = L, x2 = L, x3 = L;
+		int i = n;
+		while (i % STATES != 0) {
+			i--;
+			int s = data.get(i) & 0xFF;
+			if (i % STATES == 2)
+				x2 = out.put(x2, s);
+			else if (i % STATES == 1)
+				x1 = out.put(x1, s);
+			else
+				x0 = out.put(x0, s);
+		}
+		for (; i > 0; i -= STATES) {
+			x3 = out.put(x3, data.get(i - 1) & 0xFF);
+			x2 = out.put(x2, data.get(i - 2) & 0xFF);
+			x1 = out.put(x1, data.get(i - 3) & 0xFF);
+			x0 = out.put(x0, data.get(i - 4) & 0xFF);
+		}
+		if (n > 0) {
+			out.flush(x3);
+			out.flush(x2);
+			out.flush(x1);
+			out.flush(x0);
+		}
+
+		byte[] head = header.toByteArray();
+		int body = out.buffer.length - out.position;
+		byte[] encoded = new byte[head.length + body];
+		System.arraycopy(head, 0, encoded, 0, head.length);
+		System.arraycopy(out.buffer, out.position, encoded, head.length, body);
+
+		inputLength = n;
+		headerLength = head.length;
+		encodedLength = encoded.length;
+		return encoded;
+	}
+
+	private void writeFrequencies(ByteBuilder out) {
+		for (int i = 0; i < R; i += 8) {
+			int bits = 0;
+			for (int j = 0; j < 8; j++) {
+				if (freq[i + j] > 0)
+					bits |= 1 << j;
+			}
+			out.append(bits);
+		}
+		for (int f : freq) {
+			if (f > 0)
+				out.appendVarInt(f - 1);
+		}
+	}
+
+	/**
+	 * Decodes the output of encode(byte[]). The frequencies are read from the
+	 * header, so this doesn't depend on the ones stored in this instance.
+	 */
+	public byte[] decode(byte[] encoded) {
+		return decodeBytes(encoded);
+	}
+
+	private static byte[] decodeBytes(byte[] encoded) {
+		ByteReader header = new ByteReader(encoded);
+		int n = header.readVarInt();
+		byte[] output = new byte[n];
+		if (n == 0)
+			return output;
+
+		int[] freq = new int[R];
+		int[] present = new int[R / 8];
+		for (int i = 0; i < present.length; i++)
+			present[i] = header.read();
+		int total = 0;
+		for (int s = 0; s < R; s++) {
+			if ((present[s >>> 3] >>> (s & 7) & 1) != 0) {
+				freq[s] = header.readVarInt() + 1;
+				total += freq[s];
+			}
+		}
+		if (total != M)
+			throw new IllegalArgumentException("rans frequencies add up to " + total + ", not " + M);
+		Decoder in = new Decoder(encoded, header.position(), freq);
+
+		int x0 = in.state(), x1 = in.state(), x2 = in.state(), x3 = in.state();
+		int i = 0;
+		for (; i + STATES <= n; i += STATES) {
+			int s0 = in.symbol(x0);
+			int s1 = in.symbol(x1);
+			int s2 = in.symbol(x2);
+			int s3 = in.symbol(x3);
+			output[i] = (byte) s0;
+			output[i + 1] = (byte) s1;
+			output[i + 2] = (byte) s2;
+			output[i + 3] = (byte) s3;
+			x0 = in.advance(x0, s0);
+			x1 = in.advance(x1, s1);
+			x2 = in.advance(x2, s2);
+			x3 = in.advance(x3, s3);
+		}
+		if (i < n) {
+			int s = in.symbol(x0);
+			output[i++] = (byte) s;
+			x0 = in.advance(x0, s);
+		}
+		if (i < n) {
+			int s = in.symbol(x1);
+			output[i++] = (byte) s;
+			x1 = in.advance(x1, s);
+		}
+		if (i < n) {
+			int s = in.symbol(x2);
+			output[i++] = (byte) s;
+			x2 = in.advance(x2, s);
+		}
+
+		// every coder ends where it started, or the stream was damaged.
+		if (x0 != L || x1 != L || x2 != L || x3 != L || in.position != encoded.length)
+			throw new IllegalArgumentException("rans stream is corrupt");
+		return output;
+	}
+
+	/**
+	 * Writes the coded stream backwards from the end of its buffer.
+	 */
+	private final class Encoder {
+		final byte[] buffer;
+		int position;
+
+		Encoder(int capacity) {
+			buffer = new byte[capacity];
+			position = capacity;
+		}
+
+		int put(int x, int s) {
+			int f = freq[s];
+			// move bytes out until coding s keeps the state below L << 8.
+			long max = (long) ((L >>> PROB_BITS) << 8) * f;
+			while (x >= max) {
+				buffer[--position] = (byte) x;
+				x >>>= 8;
+			}
+			return (x / f << PROB_BITS) + x % f + cumulative[s];
+		}
+
+		void flush(int x) {
+			for (int k = 0; k < 4; k++) {
+				buffer[--position] = (byte) x;
+				x >>>= 8;
+			}
+		}
+	}
+
+	/**
+	 * Reads the coded stream forwards, with a table from the low bits of the
+	 * state to the symbol they fall in.
+	 */
+	private static final class Decoder {
+		final byte[] data;
+		final int[] freq;
+		final int[] cumulative;
+		final byte[] symbols = new byte[M];
+		int position;
+
+		Decoder(byte[] data, int position, int[] freq) {
+			this.data = data;
+			this.position = position;
+			this.freq = freq;
+			this.cumulative = RansCoding.cumulative(freq);
+			for (int s = 0; s < R; s++) {
+				for (int slot = cumulative[s]; slot < cumulative[s] + freq[s]; slot++)
+					symbols[slot] = (byte) s;
+			}
+		}
+
+		int state() {
+			int x = 0;
+			for (int k = 0; k < 4; k++)
+				x = x << 8 | next();
+			return x;
+		}
+
+		int symbol(int x) {
+			return symbols[x & MASK] & 0xFF;
+		}
+
+		int advance(int x, int s) {
+			x = freq[s] * (x >>> PROB_BITS) + (x & MASK) - cumulative[s];
+			while (x < L)
+				x = x << 8 | next();
+			return x;
+		}
+
+		private int next() {
+			if (position >= data.length)
+				throw new IllegalArgumentException("rans stream is truncated");
+			return data[position++] & 0xFF;
+		}
+	}
+
+	/**
+	 * Reports how close the last encoding came to the entropy of the counts
+	 * the frequencies were made from.
+	 */
+	public String getInformation() {
+		long total = 0;
+		int symbols = 0;
+		for (int c : counts) {
+			total += c;
+			if (c > 0)
+				symbols++;
+		}
+		double entropy = 0;
+		for (int c : counts) {
+			if (c > 0)
+				entropy -= c * (Math.log((double) c / total) / Math.log(2));
+		}
+		String info = "alphabet: " + symbols + " symbols\n" + "frequencies scaled to " + M + ", " + STATES
+				+ " interleaved states\n" + "header: " + headerLength + " bytes\n";
+		if (inputLength > 0) {
+			info += String.format("entropy: %.4f bits/byte, coded: %.4f bits/byte\n", entropy / total,
+					(encodedLength - headerLength) * 8.0 / inputLength);
+		}
+		return info;
+	}
+}
@@ -0,0 +1,134 @@
+import java.util.Arrays;
+
+/**
+ * Shift-Or (bitap) search. The state is a bit vector with a bit for every
+ * prefix of the pattern, clear if that prefix matches the text ending at the
+ * current char. Reading a char shifts the vector up one, so each prefix grows
+ * by a char, and ORs in the char's mask, which sets the bits of the prefixes
+ * it doesn't extend. A match ends wherever the top bit is clear.
+ *
+ * For approximate search (Wu and Manber) there's a vector for each number of
+ * edits d from 0 to k. A prefix matches with d edits if it matches with d
+ * edits after the char is read, or matched with d - 1 edits before it was read
+ * (the char is inserted), or the prefix one shorter did before or after (the
+ * pattern char is changed or deleted).
+ *
+ * Patterns up to 64 chars fit in one long. Longer patterns use a block of
+ * longs, with the shift carrying the top bit of each into the next.
+ */
+public class ShiftOr implements SubstringSearch, FuzzySearch {
+	private final String search;
+	private final int[] charClass;
+	private final int words;
+	// masks[c * words + w] is word w of the mask for char class c.
+	private final long[] masks;
+
+	public ShiftOr(String pattern) {
+		this.search = pattern;
+
+		int m = pattern.length();
+		charClass = FuzzySearch.charClasses(pattern);
+		int classes = 1;
+		for (int i = 0; i < m; i++)
+			classes = Math.max(classes, charClass[pattern.charAt(i)] + 1);
+		words = Math.max(1, (m + 63) >>> 6);
+		masks = new long[classes * words];
+		Arrays.fill(masks, -1L);
+		for (int i = 0; i < m; i++)
+			masks[charClass[pattern.charAt(i)] * words + (i >>> 6)] &= ~(1L << i);
+	}
+
+	@Override
+	public String pattern() {
+		return search;
+	}
+
+	@Override
+	public int search(CharSequence text, int from, int to) {
+		int m = search.length();
+		if (m == 0)
+			return from <= to ? from : -1;
+
+		int topWord = (m - 1) >>> 6;
+		long top = 1L << (m - 1);
+		if (words == 1) {
+			long state = -1L;
+			for (int i = from; i < to; i++) {
+				state = state << 1 | masks[charClass[text.charAt(i)]];
+				if ((state & top) == 0)
+					return i - m + 1;
+			}
+			return -1;
+		}
+
+		long[] state = new long[words];
+		Arrays.fill(state, -1L);
+		for (int i = from; i < to; i++) {
+			int base = charClass[text.charAt(i)] * words;
+			for (int w = words - 1; w > 0; w--)
+				state[w] = (state[w] << 1 | state[w - 1] >>> 63) | masks[base + w];
+			state[0] = state[0] << 1 | masks[base];
+			if ((state[topWord] & top) == 0)
+				return i - m + 1;
+		}
+		return -1;
+	}
+
+	@Override
+	public int[] searchRuns(CharSequence text, int k, int span) {
+		int m = search.length();
+		FuzzyMatches found = new FuzzyMatches(span);
+		if (m == 0)
+			return found.toArray();
+		// with m edits anything matches, so there's no point going further.
+		k = Math.min(k, m);
+
+		int topWord = (m - 1) >>> 6;
+		long top = 1L << (m - 1);
+		long[][] state = new long[k + 1][words];
+		for (int d = 0; d <= k; d++) {
+			Arrays.fill(state[d], -1L);
+			clearLow(state[d], d);
+		}
+		long[] before = new long[words];
+		long[] saved = new long[words];
+
+		for (int i = 0; i < text.length(); i++) {
+			int base = charClass[text.charAt(i)] * words;
+			// state[d - 1] already holds the new vector by the time d is
+			// worked out, and before holds the old one.
+			for (int d = 0; d <= k; d++) {
+				long[] r = state[d];
+				long[] newer = d > 0 ? state[d - 1] : null;
+				for (int w = words - 1; w >= 0; w--) {
+					long old = r[w];
+					saved[w] = old;
+					long next = (old << 1 | (w > 0 ? r[w - 1] >>> 63 : 0)) | masks[base + w];
+					if (d > 0) {
+						long oldShifted = before[w] << 1 | (w > 0 ? before[w - 1] >>> 63 : 0);
+						long newShifted = newer[w] << 1 | (w > 0 ? newer[w - 1] >>> 63 : 0);
+						next &= before[w] & oldShifted & newShifted;
+					}
+					r[w] = next;
+				}
+				clearLow(r, d);
+				long[] swap = before;
+				before = saved;
+				saved = swap;
+			}
+			for (int d = 0; d <= k; d++) {
+				if ((state[d][topWord] & top) == 0) {
+					found.add(i + 1, d);
+					break;
+				}
+			}
+		}
+		return found.toArray();
+	}
+
+	// any prefix of d chars or fewer matches with d deletions.
+	private static void clearLow(long[] r, int d) {
+		for (int w = 0; d > 0; w++, d -= 64)
+			r[w] &= d >= 64 ? 0 : -1L << d;
+	}
+}
@@ -0,0 +1,116 @@
+import java.util.Arrays;
+
+/**
+ * A pattern compiled for substring search. Whatever tables an algorithm needs
+ * are built once from the pattern, and the compiled pattern can then search
+ * any number of texts. Searching doesn't change a compiled pattern, so one can
+ * be shared between threads; ParallelSearch relies on that.
+ *
+ * compile(String) picks an algorithm from the pattern alone. Brute force does
+ * for very short patterns, where there's nothing to skip over, and Horspool
+ * for most others; on war_and_peace.txt it finds Testing.tolstoyPattern about
+ * twenty times faster than KMP. Horspool's worst case is a pattern made of one
+ * or two chars over and over, so those get Two-Way, which is linear whatever
+ * the pattern, and long patterns built from only a few chars get Boyer-Moore,
+ * whose good suffix rule keeps the shifts long.
+ */
+public interface SubstringSearch {
+	/**
+	 * The names accepted by compile(String, String), starting with "Auto".
+	 */
+	String[] ENGINES = { "Auto", "Brute", "KMP", "Horspool", "Boyer-Moore", "Two-Way", "Shift-Or", "First-last" };
+
+	String pattern();
+
+	/**
+	 * Returns the start of the first match that lies entirely within
+	 * text[from, to), or -1 if there isn't one.
+	 */
+	int search(CharSequence text, int from, int to);
+
+	/**
+	 * Returns the start of every match in text, in order, including matches
+	 * that overlap each other.
+	 */
+	default int[] searchAll(CharSequence text) {
+		return searchAll(text, 0, text.length());
+	}
+
+	/**
+	 * Returns the start of every match that lies entirely within
+	 * text[from, to), in order.
+	 */
+	default int[] searchAll(CharSequence text, int from, int to) {
+		if (pattern().isEmpty())
+			return new int[0];
+		int[] found = new int[16];
+		int count = 0;
+		for (int i = search(text, from, to); i >= 0; i = search(text, i + 1, to)) {
+			if (count == found.length)
+				found = Arrays.copyOf(found, count * 2);
+			found[count++] = i;
+		}
+		return Arrays.copyOf(found, count);
+	}
+
+	/**
+	 * Compiles pattern with an algorithm suited to it.
+	 */
+	static SubstringSearch compile(String pattern) {
+		int m = pattern.length();
+		if (m < 4)
+			return new Brute(pattern);
+		int distinct = distinctChars(pattern);
+		if (distinct <= 2)
+			return new TwoWay(pattern);
+		if (distinct * 8 <= m)
+			return new BoyerMoore(pattern);
+		return new Horspool(pattern);
+	}
+
+	/**
+	 * Compiles pattern with the named engine, one of ENGINES.
+	 */
+	static SubstringSearch compile(String engine, String pattern) {
+		switch (engine) {
+		case "Auto":
+			return compile(pattern);
+		case "Brute":
+			return new Brute(pattern);
+		case "KMP":
+			return new KMP(pattern);
+		case "Horspool":
+			return new Horspool(pattern);
+		case "Boyer-Moore":
+			return new BoyerMoore(pattern);
+		case "Two-Way":
+			return new TwoWay(pattern);
+		case "Shift-Or":
+			return new ShiftOr(pattern);
+		case "First-last":
+			return new FirstLastFilter(pattern);
+		default:
+			throw new IllegalArgumentException("unknown search engine " + engine);
+		}
+	}
+
+	/**
+	 * The short name of the algorithm behind a compiled pattern, as listed in
+	 * ENGINES.
+	 */
+	static String name(SubstringSearch search) {
+		if (search instanceof BoyerMoore)
+			return "Boyer-Moore";
+		if (search instanceof TwoWay)
+			return "Two-Way";
+		if (search instanceof ShiftOr)
+			return "Shift-Or";
+		if (search instanceof FirstLastFilter)
+			return "First-last";
+		return search.getClass().getSimpleName();
+	}
+
+	static int distinctChars(String pattern) {
+		return (int) pattern.chars().distinct().count();
+	}
+}
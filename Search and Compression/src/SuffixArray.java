@@ -0,0 +1,379 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * A suffix array over a text, with its LCP array. The suffix array lists the
+ * start of every suffix of the text in sorted order, so all the occurrences of
+ * a pattern sit together in one range of it, which two binary searches find in
+ * O(m log n) time for a pattern of m chars. lcp[i] is the length of the prefix
+ * shared by the suffixes at i - 1 and i, which gives the repeats in the text.
+ *
+ * The suffix array is built with SA-IS (Nong, Zhang and Chan), which sorts the
+ * suffixes in linear time by sorting a sample of them recursively and inducing
+ * the order of the rest, and the LCP array with Kasai's algorithm. Both can be
+ * saved next to the data file, and are checked against the text's length and
+ * hash when they're loaded back.
+ */
+public class SuffixArray implements TextIndex {
+	/**
+	 * The extension of saved index files, added to the data file's name.
+	 */
+	public static final String EXTENSION = ".sa";
+
+	private static final int MAGIC = 0x53414958;
+	private static final int HEADER_BYTES = 12;
+
+	private final String text;
+	private final int[] suffixes;
+	private final int[] lcp;
+
+	public SuffixArray(String text) {
+		this.text = text;
+		this.suffixes = build(text);
+		this.lcp = lcp(text, suffixes);
+	}
+
+	private SuffixArray(String text, int[] suffixes, int[] lcp) {
+		this.text = text;
+		this.suffixes = suffixes;
+		this.lcp = lcp;
+	}
+
+	/**
+	 * The index file for a data file, next to it.
+	 */
+	public static File indexFile(File dataFile) {
+		return new File(dataFile.getPath() + EXTENSION);
+	}
+
+	/**
+	 * Loads the index saved for dataFile if there is one and it matches text,
+	 * or else builds it and tries to save it for next time.
+	 */
+	public static SuffixArray loadOrBuild(File dataFile, String text) {
+		File file = indexFile(dataFile);
+		if (file.exists()) {
+			try {
+				return load(file, text);
+			} catch (IOException | IllegalArgumentException e) {
+				// stale or damaged, so build it again below.
+			}
+		}
+		SuffixArray index = new SuffixArray(text);
+		try {
+			index.save(file);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return index;
+	}
+
+	/**
+	 * Saves the index as a header of (magic, length, hash of the text)
+	 * followed by the suffix array and LCP array, as big endian ints.
+	 */
+	public void save(File file) throws IOException {
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+			out.writeInt(MAGIC);
+			out.writeInt(text.length());
+			out.writeInt(text.hashCode());
+			for (int s : suffixes)
+				out.writeInt(s);
+			for (int l : lcp)
+				out.writeInt(l);
+		}
+	}
+
+	/**
+	 * Loads an index saved for text, mapping the file rather than reading it
+	 * through a stream.
+	 */
+	public static SuffixArray load(File file, String text) throws IOException {
+		ByteBuffer bytes = MappedText.map(file);
+		int n = text.length();
+		if (bytes.limit() != HEADER_BYTES + 8L * n || bytes.getInt(0) != MAGIC || bytes.getInt(4) != n
+				|| bytes.getInt(8) != text.hashCode())
+			throw new IllegalArgumentException(file + " is not an index of this text");
+
+		bytes.position(HEADER_BYTES);
+		IntBuffer ints = bytes.asIntBuffer();
+		int[] suffixes = new int[n];
+		int[] lcp = new int[n];
+		ints.get(suffixes);
+		ints.get(lcp);
+		return new SuffixArray(text, suffixes, lcp);
+	}
+
+	public int length() {
+		return suffixes.length;
+	}
+
+	/**
+	 * The start of the i'th smallest suffix.
+	 */
+	public int suffix(int i) {
+		return suffixes[i];
+	}
+
+	/**
+	 * The length of the prefix shared by the suffixes at i - 1 and i, or 0
+	 * for i = 0.
+	 */
+	public int lcp(int i) {
+		return lcp[i];
+	}
+
+	@Override
+	public int count(String pattern) {
+		return upperBound(pattern) - lowerBound(pattern);
+	}
+
+	@Override
+	public int[] locate(String pattern) {
+		int[] found = Arrays.copyOfRange(suffixes, lowerBound(pattern), upperBound(pattern));
+		Arrays.sort(found);
+		return found;
+	}
+
+	/**
+	 * The longest substring that occurs at least twice in the text.
+	 */
+	public String longestRepeat() {
+		int best = 0;
+		for (int i = 1; i < lcp.length; i++) {
+			if (lcp[i] > lcp[best])
+				best = i;
+		}
+		return text.substring(suffixes[best], suffixes[best] + lcp[best]);
+	}
+
+	// the first suffix that isn't less than pattern.
+	private int lowerBound(String pattern) {
+		int lo = 0;
+		int hi = suffixes.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (compare(pattern, suffixes[mid]) > 0)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	// the first suffix past every one that starts with pattern.
+	private int upperBound(String pattern) {
+		int lo = 0;
+		int hi = suffixes.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (compare(pattern, suffixes[mid]) >= 0)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	/**
+	 * Compares pattern with the suffix at start, cut to the pattern's length,
+	 * so a suffix that starts with the pattern compares equal.
+	 */
+	private int compare(String pattern, int start) {
+		int m = Math.min(pattern.length(), text.length() - start);
+		for (int i = 0; i < m; i++) {
+			int c = pattern.charAt(i) - text.charAt(start + i);
+			if (c != 0)
+				return c;
+		}
+		return m == pattern.length() ? 0 : 1;
+	}
+
+	/**
+	 * Sorts the suffixes of text. The chars are first renumbered by rank, so
+	 * the alphabet SA-IS works over is only as big as it needs to be.
+	 */
+	static int[] build(String text) {
+		int n = text.length();
+		boolean[] used = new boolean[Character.MAX_VALUE + 1];
+		for (int i = 0; i < n; i++)
+			used[text.charAt(i)] = true;
+		int[] rank = new int[Character.MAX_VALUE + 1];
+		int upper = -1;
+		for (int c = 0; c <= Character.MAX_VALUE; c++) {
+			if (used[c])
+				rank[c] = ++upper;
+		}
+		int[] s = new int[n];
+		for (int i = 0; i < n; i++)
+			s[i] = rank[text.charAt(i)];
+		return sais(s, Math.max(upper, 0));
+	}
+
+	/**
+	 * Sorts the suffixes of a byte array, treating bytes as unsigned.
+	 */
+	static int[] build(byte[] data) {
+		int[] s = new int[data.length];
+		for (int i = 0; i < data.length; i++)
+			s[i] = data[i] & 0xFF;
+		return sais(s, 255);
+	}
+
+	/**
+	 * SA-IS over s, whose values are from 0 to upper. A suffix is S type if it
+	 * is smaller than the suffix after it and L type otherwise, and an LMS
+	 * suffix is an S suffix just after an L one. Sorting the LMS suffixes is
+	 * enough to induce the order of all the others, and sorting the LMS
+	 * suffixes comes down to sorting a string a half the length or less,
+	 * which is done by recursion.
+	 */
+	private static int[] sais(int[] s, int upper) {
+		int n = s.length;
+		if (n == 0)
+			return new int[0];
+		if (n == 1)
+			return new int[] { 0 };
+		if (n == 2)
+			return s[0] < s[1] ? new int[] { 0, 1 } : new int[] { 1, 0 };
+
+		int[] sa = new int[n];
+		boolean[] sType = new boolean[n];
+		for (int i = n - 2; i >= 0; i--)
+			sType[i] = s[i] == s[i + 1] ? sType[i + 1] : s[i] < s[i + 1];
+
+		// sumL[c] is where the L suffixes starting with c begin in sa, and
+		// sumS[c] where the S ones do.
+		int[] sumL = new int[upper + 1];
+		int[] sumS = new int[upper + 1];
+		for (int i = 0; i < n; i++) {
+			if (!sType[i])
+				sumS[s[i]]++;
+			else
+				sumL[s[i] + 1]++;
+		}
+		for (int c = 0; c <= upper; c++) {
+			sumS[c] += sumL[c];
+			if (c < upper)
+				sumL[c + 1] += sumS[c];
+		}
+
+		int[] lmsIndex = new int[n + 1];
+		Arrays.fill(lmsIndex, -1);
+		int m = 0;
+		for (int i = 1; i < n; i++) {
+			if (!sType[i - 1] && sType[i])
+				lmsIndex[i] = m++;
+		}
+		int[] lms = new int[m];
+		for (int i = 1, k = 0; i < n; i++) {
+			if (!sType[i - 1] && sType[i])
+				lms[k++] = i;
+		}
+
+		induce(s, upper, sa, sType, sumL, sumS, lms);
+
+		if (m > 0) {
+			// name each LMS substring by its rank, giving equal substrings
+			// equal names, and sort the string of names.
+			int[] sorted = new int[m];
+			int k = 0;
+			for (int v : sa) {
+				if (lmsIndex[v] != -1)
+					sorted[k++] = v;
+			}
+			int[] names = new int[m];
+			int name = 0;
+			names[lmsIndex[sorted[0]]] = 0;
+			for (int i = 1; i < m; i++) {
+				int l = sorted[i - 1];
+				int r = sorted[i];
+				int endL = lmsIndex[l] + 1 < m ? lms[lmsIndex[l] + 1] : n;
+				int endR = lmsIndex[r] + 1 < m ? lms[lmsIndex[r] + 1] : n;
+				boolean same = true;
+				if (endL - l != endR - r) {
+					same = false;
+				} else {
+					while (l < endL && s[l] == s[r]) {
+						l++;
+						r++;
+					}
+					if (l == n || s[l] != s[r])
+						same = false;
+				}
+				if (!same)
+					name++;
+				names[lmsIndex[sorted[i]]] = name;
+			}
+
+			int[] order = sais(names, name);
+			for (int i = 0; i < m; i++)
+				sorted[i] = lms[order[i]];
+			induce(s, upper, sa, sType, sumL, sumS, sorted);
+		}
+		return sa;
+	}
+
+	/**
+	 * Places the LMS suffixes, in the given order, at the ends of their
+	 * buckets, then sweeps forward to place the L suffixes and back to place
+	 * the S ones.
+	 */
+	private static void induce(int[] s, int upper, int[] sa, boolean[] sType, int[] sumL, int[] sumS, int[] lms) {
+		int n = s.length;
+		Arrays.fill(sa, -1);
+		int[] bucket = new int[upper + 1];
+		System.arraycopy(sumS, 0, bucket, 0, upper + 1);
+		for (int d : lms) {
+			if (d != n)
+				sa[bucket[s[d]]++] = d;
+		}
+		System.arraycopy(sumL, 0, bucket, 0, upper + 1);
+		sa[bucket[s[n - 1]]++] = n - 1;
+		for (int i = 0; i < n; i++) {
+			int v = sa[i];
+			if (v >= 1 && !sType[v - 1])
+				sa[bucket[s[v - 1]]++] = v - 1;
+		}
+		System.arraycopy(sumL, 0, bucket, 0, upper + 1);
+		for (int i = n - 1; i >= 0; i--) {
+			int v = sa[i];
+			if (v >= 1 && sType[v - 1])
+				sa[--bucket[s[v - 1] + 1]] = v - 1;
+		}
+	}
+
+	/**
+	 * Kasai's algorithm: going through the suffixes in text order, the
+	 * shared prefix with the previous suffix in sorted order shrinks by at
+	 * most one each step, so it's never recomputed from scratch.
+	 */
+	static int[] lcp(String text, int[] suffixes) {
+		int n = suffixes.length;
+		int[] rank = new int[n];
+		for (int i = 0; i < n; i++)
+			rank[suffixes[i]] = i;
+		int[] lcp = new int[n];
+		int h = 0;
+		for (int i = 0; i < n; i++) {
+			if (rank[i] == 0) {
+				h = 0;
+				continue;
+			}
+			int j = suffixes[rank[i] - 1];
+			while (i + h < n && j + h < n && text.charAt(i + h) == text.charAt(j + h))
+				h++;
+			lcp[rank[i]] = h;
+			if (h > 0)
+				h--;
+		}
+		return lcp;
+	}
+}
@@ -1,10 +1,24 @@
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
 import org.junit.Test;
 
 public class Testing {
@@ -48,17 +62,343 @@ public class Testing {
 
 	public void testSearchBruteLong() {
 		Brute b = new Brute(tolstoyPattern, tolstoy);
-		b.search(tolstoyPattern, tolstoy);
+		int num = b.search(tolstoyPattern, tolstoy);
+		assertEquals(tolstoy.indexOf(tolstoyPattern), num);
+		assertEquals(-1, b.search(tolstoyPattern, tolstoy.substring(num + 1)));
 	}
 
 	@Test
 
 	public void testSearchKMPLong() {
 		KMP kmp = new KMP(tolstoyPattern, tolstoy);
-		kmp.search(tolstoyPattern, tolstoy);
+		int num = kmp.search(tolstoyPattern, tolstoy);
+		assertEquals(tolstoy.indexOf(tolstoyPattern), num);
+		assertEquals(-1, kmp.search(tolstoyPattern, tolstoy.substring(num + 1)));
+	}
+	
+	@Test
 
+	public void testSearchKMPAll() {
+		KMP kmp = new KMP("aa");
+		assertArrayEquals(new int[] { 0, 1, 2, 5 }, kmp.searchAll("aaaabaa"));
+		// a match right at the end of the text.
+		assertEquals(5, kmp.search("aaaabaa", 4, 7));
+		assertEquals(-1, kmp.search("aaaabaa", 4, 6));
+
+		// the same compiled pattern works on other texts.
+		KMP tolstoyKMP = new KMP("Pierre");
+		int[] all = tolstoyKMP.searchAll(tolstoy);
+		int count = 0;
+		for (int i = tolstoy.indexOf("Pierre"); i >= 0; i = tolstoy.indexOf("Pierre", i + 1))
+			assertEquals(i, all[count++]);
+		assertEquals(count, all.length);
 	}
 	
+	@Test
+
+	public void testSearchEngines() {
+		String[] patterns = { tolstoyPattern, "Pierre", "the", "e", "Natasha", "Prince Andrew", "zzzzqqq",
+				"          ", ".\r\n\r\n", "said the" };
+		for (String engine : SubstringSearch.ENGINES) {
+			for (String p : patterns) {
+				SubstringSearch search = SubstringSearch.compile(engine, p);
+				assertEquals(engine + " " + p, tolstoy.indexOf(p), search.search(tolstoy, 0, tolstoy.length()));
+			}
+			assertArrayEquals(new int[] { 0, 1, 2, 5 }, SubstringSearch.compile(engine, "aa").searchAll("aaaabaa"));
+			assertEquals(38, SubstringSearch.compile(engine, pattern).search(shortTest, 0, shortTest.length()));
+		}
+
+		// periodic patterns and small alphabets, against KMP.
+		Random random = new Random(12);
+		for (int trial = 0; trial < 2000; trial++) {
+			char[] text = new char[random.nextInt(200)];
+			for (int i = 0; i < text.length; i++)
+				text[i] = (char) ('a' + random.nextInt(2 + trial % 3));
+			int start = text.length == 0 ? 0 : random.nextInt(text.length);
+			String p = new String(text, start, Math.min(text.length - start, 1 + random.nextInt(12)));
+			if (p.isEmpty())
+				p = "ab";
+			String t = new String(text);
+			int[] expected = new KMP(p).searchAll(t);
+			for (String engine : SubstringSearch.ENGINES)
+				assertArrayEquals(engine + " " + p, expected, SubstringSearch.compile(engine, p).searchAll(t));
+		}
+	}
+
+	@Test
+
+	public void testAhoCorasick() {
+		AhoCorasick small = new AhoCorasick("he", "she", "his", "hers", "he");
+		int[][] found = small.searchAll("ushers");
+		assertArrayEquals(new int[] { 2 }, found[0]);
+		assertArrayEquals(new int[] { 1 }, found[1]);
+		assertArrayEquals(new int[0], found[2]);
+		assertArrayEquals(new int[] { 2 }, found[3]);
+		assertArrayEquals(new int[] { 2 }, found[4]);
+
+		// a few thousand words of the book, checked in a sample against KMP.
+		String[] words = Arrays.stream(tolstoy.split("[^A-Za-z]+")).filter(w -> w.length() > 2).distinct().limit(5000)
+				.toArray(String[]::new);
+		AhoCorasick dictionary = new AhoCorasick(words);
+		int[] counts = dictionary.count(tolstoy);
+		int[][] positions = dictionary.searchAll(tolstoy);
+		for (int p = 0; p < words.length; p += 97) {
+			int[] expected = new KMP(words[p]).searchAll(tolstoy);
+			assertArrayEquals(words[p], expected, positions[p]);
+			assertEquals(words[p], expected.length, counts[p]);
+		}
+	}
+
+	@Test
+
+	public void testSuffixArray() throws IOException {
+		SuffixArray banana = new SuffixArray("banana");
+		int[] expected = { 5, 3, 1, 0, 4, 2 };
+		int[] lcp = { 0, 1, 3, 0, 0, 2 };
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], banana.suffix(i));
+			assertEquals(lcp[i], banana.lcp(i));
+		}
+		assertEquals("ana", banana.longestRepeat());
+		assertArrayEquals(new int[] { 1, 3 }, banana.locate("ana"));
+		assertEquals(0, banana.count("nab"));
+
+		SuffixArray index = new SuffixArray(tolstoy);
+		for (String p : new String[] { tolstoyPattern, "Pierre", "the", "e", "Natasha", "zzzzqqq", ".\r\n" }) {
+			int[] found = new KMP(p).searchAll(tolstoy);
+			assertArrayEquals(p, found, index.locate(p));
+			assertEquals(p, found.length, index.count(p));
+		}
+
+		// saved and loaded back, and refused for a different text.
+		File file = File.createTempFile("tolstoy", SuffixArray.EXTENSION);
+		try {
+			index.save(file);
+			SuffixArray loaded = SuffixArray.load(file, tolstoy);
+			for (int i = 0; i < tolstoy.length(); i += 9973) {
+				assertEquals(index.suffix(i), loaded.suffix(i));
+				assertEquals(index.lcp(i), loaded.lcp(i));
+			}
+			try {
+				SuffixArray.load(file, tolstoy.substring(1));
+				assertTrue(false);
+			} catch (IllegalArgumentException e) {
+				// expected.
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+
+	public void testBurrowsWheeler() throws IOException {
+		for (String name : new String[] { "war_and_peace.txt", "taisho.txt", "pi.txt" }) {
+			byte[] data = Files.readAllBytes(new File("data/" + name).toPath());
+			BurrowsWheeler bwt = new BurrowsWheeler();
+			byte[] compressed = bwt.compress(data);
+			assertArrayEquals(data, bwt.decompress(compressed));
+			assertTrue(name, compressed.length < data.length / 2);
+
+			// search the compressed form, checked against KMP on the bytes.
+			FMIndex index = FMIndex.fromCompressed(compressed);
+			String text = new String(data, StandardCharsets.UTF_8);
+			for (int start = 1000; start < text.length(); start += text.length() / 7) {
+				String p = text.substring(start, start + 5);
+				int[] found = KMP.searchAll(ByteBuffer.wrap(data), p.getBytes(StandardCharsets.UTF_8));
+				assertArrayEquals(p, found, index.locate(p));
+				assertEquals(p, found.length, index.count(p));
+			}
+		}
+		BurrowsWheeler bwt = new BurrowsWheeler();
+		for (String s : new String[] { "", "a", "banana", "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa" }) {
+			byte[] data = s.getBytes(StandardCharsets.UTF_8);
+			assertArrayEquals(data, bwt.decompress(bwt.compress(data)));
+		}
+		assertEquals(0, new FMIndex("banana").count("nab"));
+		assertArrayEquals(new int[] { 1, 3 }, new FMIndex("banana").locate("ana"));
+	}
+
+	@Test
+
+	public void testFuzzySearch() {
+		// ends of approximate matches, against the textbook dynamic
+		// programming search.
+		Random random = new Random(16);
+		for (int trial = 0; trial < 600; trial++) {
+			char[] text = new char[random.nextInt(400)];
+			int letters = 2 + trial % 4;
+			for (int i = 0; i < text.length; i++)
+				text[i] = (char) ('a' + random.nextInt(letters));
+			char[] p = new char[1 + random.nextInt(trial % 3 == 0 ? 150 : 20)];
+			for (int i = 0; i < p.length; i++)
+				p[i] = (char) ('a' + random.nextInt(letters));
+			String t = new String(text);
+			String pattern = new String(p);
+			for (int k = 0; k <= 3; k++) {
+				int[] expected = fuzzyEnds(pattern, t, k);
+				assertArrayEquals(pattern + " " + k, expected, new ShiftOr(pattern).searchAll(t, k));
+				assertArrayEquals(pattern + " " + k, expected, new Myers(pattern).searchAll(t, k));
+			}
+		}
+
+		// a misspelling in the book.
+		int[] ends = new Myers("Pierree").searchAll(tolstoy, 1);
+		assertEquals(new KMP("Pierre").searchAll(tolstoy).length, ends.length);
+		assertEquals("Pierre", tolstoy.substring(ends[0] - 6, ends[0]));
+		assertArrayEquals(ends, new ShiftOr("Pierree").searchAll(tolstoy, 1));
+
+		// with a span of the pattern's length, ends whose matches would
+		// overlap count as one.
+		int[] merged = new Myers("Nat").searchRuns(tolstoy, 2, 3);
+		assertTrue(merged.length < new Myers("Nat").searchAll(tolstoy, 2).length);
+		for (int i = 1; i < merged.length; i++)
+			assertTrue(merged[i] - merged[i - 1] > 3);
+		assertArrayEquals(merged, new ShiftOr("Nat").searchRuns(tolstoy, 2, 3));
+	}
+
+	/**
+	 * Approximate search the slow way, keeping the best end of each run of
+	 * matching ends.
+	 */
+	private static int[] fuzzyEnds(String pattern, String text, int k) {
+		int m = pattern.length();
+		int[] column = new int[m + 1];
+		for (int i = 0; i <= m; i++)
+			column[i] = i;
+		int[] ends = new int[text.length()];
+		int count = 0;
+		int best = 0;
+		int lastEnd = -2;
+		for (int j = 0; j < text.length(); j++) {
+			int diagonal = column[0];
+			for (int i = 1; i <= m; i++) {
+				int above = column[i];
+				int cost = pattern.charAt(i - 1) == text.charAt(j) ? 0 : 1;
+				column[i] = Math.min(Math.min(column[i] + 1, column[i - 1] + 1), diagonal + cost);
+				diagonal = above;
+			}
+			if (column[m] <= k) {
+				if (count > 0 && lastEnd == j) {
+					if (column[m] < best) {
+						ends[count - 1] = j + 1;
+						best = column[m];
+					}
+				} else {
+					ends[count++] = j + 1;
+					best = column[m];
+				}
+				lastEnd = j + 1;
+			}
+		}
+		return Arrays.copyOf(ends, count);
+	}
+
+	@Test
+
+	public void testFirstLastFilter() throws IOException {
+		ByteBuffer pi = MappedText.map(new File("data/pi.txt"));
+		byte[] digits = new byte[pi.limit()];
+		pi.duplicate().get(digits);
+		String[] patterns = { "999999", "31415926", "0123456789", "1", "14", "3.14159" };
+		for (String p : patterns) {
+			byte[] bytes = p.getBytes(StandardCharsets.US_ASCII);
+			assertArrayEquals(p, KMP.searchAll(pi, bytes), FirstLastFilter.searchAll(pi, bytes));
+		}
+
+		// the last few bytes of the file, and every start in a short buffer.
+		byte[] end = Arrays.copyOfRange(digits, digits.length - 9, digits.length);
+		int[] found = KMP.searchAll(pi, end);
+		assertEquals(digits.length - 9, found[found.length - 1]);
+		assertArrayEquals(found, FirstLastFilter.searchAll(pi, end));
+		ByteBuffer small = ByteBuffer.wrap("abababababababababa".getBytes(StandardCharsets.US_ASCII));
+		assertArrayEquals(new int[] { 0, 2, 4, 6, 8, 10, 12, 14, 16 },
+				FirstLastFilter.searchAll(small, "aba".getBytes(StandardCharsets.US_ASCII)));
+
+		// multi-byte UTF-8 text.
+		byte[] taisho = Files.readAllBytes(new File("data/taisho.txt").toPath());
+		String text = new String(taisho, StandardCharsets.UTF_8);
+		byte[] p = text.substring(500000, 500004).getBytes(StandardCharsets.UTF_8);
+		assertArrayEquals(KMP.searchAll(ByteBuffer.wrap(taisho), p), FirstLastFilter.searchAll(ByteBuffer.wrap(taisho), p));
+	}
+
+	@Test
+
+	public void testParallelSearch() {
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			for (String engine : SubstringSearch.ENGINES) {
+				for (String p : new String[] { "the", "Pierre", "\r\n\r\n", tolstoyPattern }) {
+					SubstringSearch search = SubstringSearch.compile(engine, p);
+					int[] expected = search.searchAll(tolstoy);
+					assertArrayEquals(engine + " " + p, expected, new ParallelSearch(search, pool).searchAll(tolstoy));
+				}
+			}
+
+			// matches right on every chunk boundary, and a range that ends
+			// part way through a match.
+			char[] text = new char[1 << 20];
+			Arrays.fill(text, 'a');
+			String as = new String(text);
+			SubstringSearch search = new ParallelSearch(new KMP("aaaaa"), pool);
+			assertEquals(as.length() - 4, search.searchAll(as).length);
+			assertEquals(100000 - 4, search.searchAll(as, 0, 100000).length);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+
+	public void testRansCoding() throws IOException {
+		for (String name : new String[] { "taisho.txt", "pi.txt", "lenna.txt" }) {
+			byte[] data = Files.readAllBytes(new File("data/" + name).toPath());
+			RansCoding rans = new RansCoding(data);
+			byte[] encoded = rans.encode(data);
+			assertArrayEquals(data, rans.decode(encoded));
+
+			// never worse than huffman, and noticeably better on skewed text.
+			byte[] huffman = new HuffmanCoding(data).encode(data);
+			assertTrue(name, encoded.length <= huffman.length);
+		}
+
+		// every tail length, single symbols, and nothing at all.
+		for (String s : new String[] { "", "a", "ab", "abc", "abcd", "abcde", "aaaaaaaaaa", "\u00ff\u0000 mixed" }) {
+			byte[] data = s.getBytes(CHARSET);
+			assertArrayEquals(s, data, RansCoding.CODEC.decompress(RansCoding.CODEC.compress(data)));
+		}
+
+		// a byte seen once in a million still gets a frequency.
+		byte[] skewed = new byte[1 << 20];
+		skewed[12345] = 7;
+		assertArrayEquals(skewed, RansCoding.CODEC.decompress(RansCoding.CODEC.compress(skewed)));
+		int[] freq = RansCoding.normalise(Histogram.count(skewed));
+		assertEquals(1, freq[7]);
+		assertEquals(1 << RansCoding.PROB_BITS, freq[0] + freq[7]);
+	}
+
+	@Test
+
+	public void testOrderOneHuffman() throws IOException {
+		for (String name : new String[] { "war_and_peace.txt", "taisho.txt", "pi.txt" }) {
+			byte[] data = Files.readAllBytes(new File("data/" + name).toPath());
+			OrderOneHuffman huff = new OrderOneHuffman();
+			byte[] compressed = huff.compress(data);
+			assertArrayEquals(data, huff.decompress(compressed));
+
+			// the fallback means it can't lose by more than a bit per context.
+			byte[] order0 = new HuffmanCoding(data).encode(data);
+			assertTrue(name, compressed.length <= order0.length + 32);
+			if (name.equals("war_and_peace.txt"))
+				assertTrue(compressed.length < order0.length * 4 / 5);
+		}
+		OrderOneHuffman huff = new OrderOneHuffman();
+		for (String s : new String[] { "", "a", "abababababab", "qu qu qu quite" }) {
+			byte[] data = s.getBytes(CHARSET);
+			assertArrayEquals(s, data, huff.decompress(huff.compress(data)));
+		}
+	}
+
 	@Test
 	
 	public void testHuffmanShort(){
@@ -79,15 +419,318 @@ public class Testing {
 		assertEquals(tolstoy, decoded);
 	}
 	
+	@Test
+
+	public void testHuffmanBytes() throws IOException {
+		byte[] data = Files.readAllBytes(new File("data/taisho.txt").toPath());
+		HuffmanCoding huff = new HuffmanCoding(data);
+		byte[] encoded = huff.encode(data);
+
+		assertTrue(encoded.length < data.length);
+		assertArrayEquals(data, huff.decode(encoded));
+	}
+
+	@Test
+
+	public void testHuffmanSingleSymbol() {
+		HuffmanCoding huff = new HuffmanCoding("aaaa");
+		assertEquals("aaaa", huff.decode(huff.encode("aaaa")));
+	}
+	
+	@Test
+
+	public void testHuffmanLengthLimit() {
+		// fibonacci frequencies give the deepest possible huffman tree.
+		int[] freq = new int[30];
+		freq[0] = freq[1] = 1;
+		for (int i = 2; i < freq.length; i++)
+			freq[i] = freq[i - 1] + freq[i - 2];
+		int[] lengths = CanonicalCode.codeLengths(freq, 10);
+
+		double kraft = 0;
+		for (int length : lengths) {
+			assertTrue(length > 0 && length <= 10);
+			kraft += Math.pow(2, -length);
+		}
+		assertEquals(1.0, kraft, 1e-9);
+
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 20; i++) {
+			for (int j = 0; j < freq[i]; j++)
+				text.append((char) ('A' + i));
+		}
+		HuffmanCoding huff = new HuffmanCoding(text.toString().getBytes(CHARSET), 6);
+		assertEquals(text.toString(), new String(huff.decode(huff.encode(text.toString().getBytes(CHARSET))), CHARSET));
+
+		// three codes of one bit can't be told apart.
+		BitWriter header = new BitWriter();
+		header.writeBits(1, 5);
+		header.writeBit(0);
+		for (int s = 0; s < 3; s++)
+			header.writeBits(1, 1);
+		try {
+			CanonicalCode.readLengths(new BitReader(header.toByteArray()), 3);
+			assertTrue(false);
+		} catch (IllegalArgumentException e) {
+			// expected.
+		}
+	}
+	
+	@Test
+
+	public void testHistogramParallel() {
+		byte[] data = tolstoy.getBytes(CHARSET);
+		assertArrayEquals(Histogram.count(data), Histogram.countParallel(data));
+	}
+	
 	@Test
 	
 	public void testLempelZivShort(){
-		
+		LempelZiv lz = new LempelZiv();
+		String compressed = lz.compress(shortTest);
+		assertEquals(shortTest, lz.decompress(compressed));
+
+		// overlapping matches copy from their own output.
+		String runs = "abababababababab,,,]]]]]]]]][[[[[[";
+		assertEquals(runs, lz.decompress(lz.compress(runs)));
+	}
+	
+	@Test
+
+	public void testLempelZivBytes() throws IOException {
+		for (File file : new File("data").listFiles()) {
+			byte[] data = Files.readAllBytes(file.toPath());
+			LempelZiv lz = new LempelZiv();
+			byte[] compressed = lz.compress(data);
+
+			assertTrue(compressed.length < data.length);
+			assertArrayEquals(data, lz.decompress(compressed));
+		}
+	}
+	
+	@Test
+
+	public void testLempelZivLevels() throws IOException {
+		for (String name : new String[] { "war_and_peace.txt", "pi.txt", "lenna.txt" }) {
+			byte[] data = Files.readAllBytes(new File("data/" + name).toPath());
+			int[] sizes = new int[LempelZiv.LEVELS.length];
+			for (int level = 0; level < sizes.length; level++) {
+				LempelZiv lz = new LempelZiv(LempelZiv.DEFAULT_WINDOW_SIZE, level);
+				byte[] compressed = lz.compress(data);
+				assertArrayEquals(name, data, lz.decompress(compressed));
+				sizes[level] = compressed.length;
+			}
+			// the optimal parse beats both others. lazy matching is only a
+			// heuristic, and loses on lenna's token soup, but wins on prose.
+			assertTrue(name, sizes[LempelZiv.OPTIMAL] <= sizes[LempelZiv.GREEDY]);
+			assertTrue(name, sizes[LempelZiv.OPTIMAL] <= sizes[LempelZiv.LAZY]);
+			if (name.equals("war_and_peace.txt"))
+				assertTrue(sizes[LempelZiv.LAZY] <= sizes[LempelZiv.GREEDY]);
+		}
+		for (String s : new String[] { "", "a", "abcabcabcabc", "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaab" }) {
+			byte[] data = s.getBytes(CHARSET);
+			for (int level = 0; level < LempelZiv.LEVELS.length; level++) {
+				LempelZiv lz = new LempelZiv(LempelZiv.DEFAULT_WINDOW_SIZE, level);
+				assertArrayEquals(s, data, lz.decompress(lz.compress(data)));
+			}
+		}
+	}
+
+	@Test
+
+	public void testLZW() throws IOException {
+		for (File file : new File("data").listFiles()) {
+			byte[] data = Files.readAllBytes(file.toPath());
+			LZW lzw = new LZW();
+			byte[] compressed = lzw.compress(data);
+			assertArrayEquals(file.getName(), data, lzw.decompress(compressed));
+			assertTrue(file.getName(), compressed.length < data.length || data.length < 100);
+		}
+
+		// a phrase made of the phrase being made, and enough random bytes
+		// to fill the dictionary and start again.
+		LZW lzw = new LZW();
+		for (String s : new String[] { "", "a", "aaaaaaaaaaaaaaaaaaaa", "abababababababab", "ab abab ababab" }) {
+			byte[] data = s.getBytes(CHARSET);
+			assertArrayEquals(s, data, lzw.decompress(lzw.compress(data)));
+		}
+		byte[] noise = new byte[1 << 18];
+		new Random(1).nextBytes(noise);
+		assertArrayEquals(noise, lzw.decompress(lzw.compress(noise)));
+		assertTrue(lzw.getInformation().contains("resets: 2"));
+	}
+
+	@Test
+
+	public void testPresetDictionary() throws IOException {
+		// train on the first half of war and peace, and compress short
+		// records from the second.
+		byte[] data = Files.readAllBytes(new File("data/war_and_peace.txt").toPath());
+		int half = data.length / 2;
+		List<byte[]> samples = new ArrayList<>();
+		for (int i = 0; i + 1024 <= half; i += 1024)
+			samples.add(Arrays.copyOfRange(data, i, i + 1024));
+		PresetDictionary dictionary = PresetDictionary.train(samples, PresetDictionary.DEFAULT_SIZE);
+		assertTrue(dictionary.length() <= PresetDictionary.DEFAULT_SIZE);
+		for (int size : new int[] { 0, 3, 20, 47, 48, 100 })
+			assertTrue("size " + size, PresetDictionary.train(samples, size).length() <= size);
+
+		for (int level = 0; level < LempelZiv.LEVELS.length; level++) {
+			LempelZiv plain = new LempelZiv(LempelZiv.DEFAULT_WINDOW_SIZE, level);
+			LempelZiv primed = new LempelZiv(LempelZiv.DEFAULT_WINDOW_SIZE, level, dictionary);
+			int plainSize = 0;
+			int primedSize = 0;
+			for (int i = half; i + 200 <= data.length; i += 10000) {
+				byte[] record = Arrays.copyOfRange(data, i, i + 200);
+				byte[] compressed = primed.compress(record);
+				assertArrayEquals(record, primed.decompress(compressed));
+				plainSize += plain.compress(record).length;
+				primedSize += compressed.length;
+			}
+			assertTrue(LempelZiv.LEVELS[level], primedSize < plainSize * 4 / 5);
+		}
+
+		// the dictionary has to match to decompress.
+		byte[] compressed = new LempelZiv(LempelZiv.DEFAULT_WINDOW_SIZE, LempelZiv.GREEDY, dictionary).compress(data);
+		assertArrayEquals(data, new LempelZiv(LempelZiv.DEFAULT_WINDOW_SIZE, LempelZiv.GREEDY, dictionary).decompress(compressed));
+		PresetDictionary other = new PresetDictionary("some other text".getBytes(CHARSET));
+		for (LempelZiv lz : new LempelZiv[] { new LempelZiv(),
+				new LempelZiv(LempelZiv.DEFAULT_WINDOW_SIZE, LempelZiv.GREEDY, other) }) {
+			try {
+				lz.decompress(compressed);
+				assertTrue(false);
+			} catch (IllegalArgumentException e) {
+				// expected.
+			}
+		}
+
+		// and tiny dictionaries and records are fine.
+		LempelZiv tiny = new LempelZiv(LempelZiv.DEFAULT_WINDOW_SIZE, LempelZiv.LAZY,
+				new PresetDictionary("ab".getBytes(CHARSET)));
+		for (String s : new String[] { "", "a", "ab", "abab", "babababa" }) {
+			byte[] record = s.getBytes(CHARSET);
+			assertArrayEquals(s, record, tiny.decompress(tiny.compress(record)));
+		}
+	}
+
+	@Test
+
+	public void testLempelZivHuffman() throws IOException {
+		for (File file : new File("data").listFiles()) {
+			byte[] data = Files.readAllBytes(file.toPath());
+			LempelZivHuffman lzh = new LempelZivHuffman();
+			byte[] compressed = lzh.compress(data);
+
+			// the entropy stage should always beat plain tokens.
+			assertTrue(compressed.length < new LempelZiv().compress(data).length);
+			assertArrayEquals(data, lzh.decompress(compressed));
+		}
+
+		// and on text, where there are plenty of matches, plain huffman too.
+		byte[] text = tolstoy.getBytes(CHARSET);
+		assertTrue(new LempelZivHuffman().compress(text).length < new HuffmanCoding(text).encode(text).length);
+	}
+	
+	@Test
+
+	public void testFramed() throws IOException {
+		byte[] data = Files.readAllBytes(new File("data/taisho.txt").toPath());
+		FramedCodec framed = new FramedCodec(LempelZivHuffman::new, 100000);
+		byte[] compressed = framed.compress(data);
+		assertArrayEquals(data, framed.decompress(compressed));
+
+		// any one block can be pulled out on its own.
+		int blocks = FramedCodec.blockCount(compressed);
+		assertEquals((data.length + 99999) / 100000, blocks);
+		assertArrayEquals(Arrays.copyOfRange(data, 100000 * (blocks - 1), data.length),
+				framed.decompressBlock(compressed, blocks - 1));
+
+		FramedCodec huffman = new FramedCodec(() -> HuffmanCoding.CODEC, 100000);
+		assertArrayEquals(data, huffman.decompress(huffman.compress(data)));
+
+		// the listener hears about every block, and can stop them.
+		AtomicLong seen = new AtomicLong();
+		huffman.setBlockListener(length -> seen.addAndGet(length));
+		compressed = huffman.compress(data);
+		assertEquals(data.length, seen.get());
+		huffman.decompress(compressed);
+		assertEquals(2L * data.length, seen.get());
+		huffman.setBlockListener(length -> {
+			throw new IllegalStateException("stop");
+		});
+		try {
+			huffman.compress(data);
+			assertTrue(false);
+		} catch (IllegalStateException e) {
+			// expected.
+		}
+	}
+	
+	@Test
+
+	public void testStreams() throws IOException {
+		byte[] data = Files.readAllBytes(new File("data/war_and_peace.txt").toPath());
+
+		ByteArrayOutputStream huffman = new ByteArrayOutputStream();
+		try (OutputStream out = HuffmanCoding.compressing(huffman)) {
+			// odd sized writes, so blocks end part way through them.
+			for (int i = 0; i < data.length; i += 9999)
+				out.write(data, i, Math.min(9999, data.length - i));
+		}
+		assertArrayEquals(data, readAll(HuffmanCoding.decompressing(new ByteArrayInputStream(huffman.toByteArray()))));
+
+		ByteArrayOutputStream lz = new ByteArrayOutputStream();
+		try (OutputStream out = LempelZiv.compressing(lz)) {
+			for (byte b : Arrays.copyOf(data, 100000))
+				out.write(b);
+			out.write(data, 100000, data.length - 100000);
+		}
+		assertArrayEquals(data, readAll(LempelZiv.decompressing(new ByteArrayInputStream(lz.toByteArray()))));
+
+		// flushing after finish does nothing, as for a DeflaterOutputStream.
+		ByteArrayOutputStream finished = new ByteArrayOutputStream();
+		CodecOutputStream out = new CodecOutputStream(finished, HuffmanCoding.CODEC);
+		out.write(data, 0, 1000);
+		out.finish();
+		out.flush();
+		out.close();
+		assertArrayEquals(Arrays.copyOf(data, 1000),
+				readAll(HuffmanCoding.decompressing(new ByteArrayInputStream(finished.toByteArray()))));
+	}
+
+	private static byte[] readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		int n;
+		while ((n = in.read(buffer)) >= 0)
+			out.write(buffer, 0, n);
+		return out.toByteArray();
+	}
+	
+	@Test
+
+	public void testMapped() throws IOException {
+		File file = new File("data/taisho.txt");
+		MappedByteBuffer mapped = MappedText.map(file);
+		byte[] data = Files.readAllBytes(file.toPath());
+		String text = new String(data, CHARSET);
+
+		// byte offsets of matches map back to the same place in the string.
+		String pattern = text.substring(1000000, 1000020);
+		int at = KMP.search(mapped, pattern.getBytes(CHARSET), 0);
+		assertEquals(text.indexOf(pattern), MappedText.charIndex(mapped, at));
+		assertEquals(-1, KMP.search(mapped, "not in there at all".getBytes(CHARSET), 0));
+
+		assertArrayEquals(new HuffmanCoding(data).encode(data), new HuffmanCoding(mapped).encode(mapped));
+		assertArrayEquals(new LempelZiv().compress(data), new LempelZiv().compress(mapped));
+		assertTrue(MappedText.contentEquals(mapped, data));
 	}
 	
 	@Test
 	
 	public void testLempelZivLong(){
-		
+		LempelZiv lz = new LempelZiv();
+		String compressed = lz.compress(tolstoy);
+		assertEquals(tolstoy, lz.decompress(compressed));
 	}
 }
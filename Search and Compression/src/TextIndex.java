@@ -0,0 +1,17 @@
+/**
+ * An index built once over a text that answers substring queries without
+ * scanning the text again.
+ */
+public interface TextIndex {
+	/**
+	 * The number of times pattern occurs in the text, overlapping occurrences
+	 * included.
+	 */
+	int count(String pattern);
+
+	/**
+	 * The start of every occurrence of pattern in the text, in increasing
+	 * order.
+	 */
+	int[] locate(String pattern);
+}
@@ -0,0 +1,113 @@
+/**
+ * Crochemore-Perrin Two-Way search. The pattern is cut at a critical
+ * position into a left and a right part. Each window checks the right part
+ * left to right and then the left part right to left; a mismatch in the right
+ * part shifts by however far the comparison got, and a full match, or a
+ * mismatch in the left part, shifts by the period of the pattern. That takes
+ * linear time and constant extra space, and unlike the Boyer-Moore family it
+ * doesn't depend on the alphabet, so it holds up on text like digits where
+ * bad character shifts are short.
+ */
+public class TwoWay implements SubstringSearch {
+	private final String search;
+
+	// the last position of the left part (-1 if it's empty), the shift to use
+	// after a full match, and whether the pattern is periodic, in which case
+	// the prefix known to match after a shift is remembered.
+	private final int critical;
+	private final int period;
+	private final boolean periodic;
+
+	public TwoWay(String pattern) {
+		this.search = pattern;
+
+		int m = pattern.length();
+		int[] forward = maximalSuffix(pattern, false);
+		int[] backward = maximalSuffix(pattern, true);
+		int ell;
+		int p;
+		if (forward[0] > backward[0]) {
+			ell = forward[0];
+			p = forward[1];
+		} else {
+			ell = backward[0];
+			p = backward[1];
+		}
+
+		critical = ell;
+		periodic = p + ell + 1 <= m && pattern.regionMatches(0, pattern, p, ell + 1);
+		period = periodic ? p : Math.max(ell + 1, m - ell - 1) + 1;
+	}
+
+	/**
+	 * Finds the maximal suffix of x under the ordinary char order, or the
+	 * reversed one, returning its start less one and its period.
+	 */
+	private static int[] maximalSuffix(String x, boolean reversed) {
+		int m = x.length();
+		int ms = -1;
+		int j = 0;
+		int k = 1;
+		int p = 1;
+		while (j + k < m) {
+			char a = x.charAt(j + k);
+			char b = x.charAt(ms + k);
+			if (reversed ? a > b : a < b) {
+				j += k;
+				k = 1;
+				p = j - ms;
+			} else if (a == b) {
+				if (k != p) {
+					k++;
+				} else {
+					j += p;
+					k = 1;
+				}
+			} else {
+				ms = j;
+				j = ms + 1;
+				k = 1;
+				p = 1;
+			}
+		}
+		return new int[] { ms, p };
+	}
+
+	@Override
+	public String pattern() {
+		return search;
+	}
+
+	@Override
+	public int search(CharSequence text, int from, int to) {
+		int m = search.length();
+		if (m == 0)
+			return from <= to ? from : -1;
+
+		int t = from;
+		// how much of the pattern is already known to match, for periodic
+		// patterns.
+		int memory = -1;
+		while (t + m <= to) {
+			int s = Math.max(critical, memory) + 1;
+			while (s < m && search.charAt(s) == text.charAt(t + s))
+				s++;
+			if (s < m) {
+				t += s - critical;
+				memory = -1;
+				continue;
+			}
+
+			int stop = periodic ? memory : -1;
+			s = critical;
+			while (s > stop && search.charAt(s) == text.charAt(t + s))
+				s--;
+			if (s <= stop)
+				return t;
+			t += period;
+			if (periodic)
+				memory = m - period - 1;
+		}
+		return -1;
+	}
+}